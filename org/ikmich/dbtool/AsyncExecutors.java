@@ -0,0 +1,58 @@
+package org.ikmich.dbtool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default executors of Dbtool.runAsync(): a pool of threads for 'select' queries, sized to the processors, and a
+ * single thread for writes, as SQLite only runs one write at a time. They are shared by all Dbtool instances, created
+ * on first use, and run on daemon threads.
+ *
+ * @author Ikenna Agbasimalo
+ */
+final class AsyncExecutors
+{
+	private static ExecutorService _readExecutor;
+	private static ExecutorService _writeExecutor;
+
+	private AsyncExecutors()
+	{
+	}
+
+	static synchronized ExecutorService getReadExecutor()
+	{
+		if (_readExecutor == null)
+		{
+			int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+			_readExecutor = Executors.newFixedThreadPool(threads, newThreadFactory("Dbtool read"));
+		}
+		return _readExecutor;
+	}
+
+	static synchronized ExecutorService getWriteExecutor()
+	{
+		if (_writeExecutor == null)
+		{
+			_writeExecutor = Executors.newSingleThreadExecutor(newThreadFactory("Dbtool write"));
+		}
+		return _writeExecutor;
+	}
+
+	private static ThreadFactory newThreadFactory(final String name)
+	{
+		return new ThreadFactory()
+		{
+			private final AtomicInteger _count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, name + " " + _count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+}
@@ -0,0 +1,530 @@
+package org.ikmich.dbtool;
+
+import android.database.Cursor;
+
+/**
+ * A read-only DbRecordSet that stores a query result column by column. Each column is kept in one array of its type
+ * (long[], double[], String[] or byte[][]) with a bitmap marking its NULL values, instead of one DbRecord per row.
+ * Returned by dbtool.runColumnar() at the end of a 'select' query chain.
+ * <p>
+ * The typed accessors (getLong(row, column), getLongColumn(column), ...) read the arrays directly, which suits scans
+ * and client-side aggregation. The List methods still work: get(row) returns a DbRecord view built from the row's
+ * values.
+ * <p>
+ * A column whose values are not all of one type is stored as integers and floats together in a double[] or, failing
+ * that, as an Object[].
+ *
+ * @author Ikenna Agbasimalo
+ */
+public class ColumnarRecordSet extends ReadOnlyRecordSet
+{
+	private static final int KIND_NULL = 0;
+	private static final int KIND_LONG = 1;
+	private static final int KIND_DOUBLE = 2;
+	private static final int KIND_STRING = 3;
+	private static final int KIND_BLOB = 4;
+	private static final int KIND_OBJECT = 5;
+
+	/**
+	 * The values of one column.
+	 */
+	private static class Column
+	{
+		final String name;
+		final long[] nulls;
+		int kind = KIND_NULL;
+		long[] longs;
+		double[] doubles;
+		String[] strings;
+		byte[][] blobs;
+		Object[] objects;
+
+		Column(String name, int rowCount)
+		{
+			this.name = name;
+			this.nulls = new long[(rowCount + 63) >> 6];
+		}
+
+		boolean isNull(int row)
+		{
+			return (nulls[row >> 6] & (1L << row)) != 0;
+		}
+
+		void setNull(int row)
+		{
+			nulls[row >> 6] |= 1L << row;
+		}
+
+		Object get(int row)
+		{
+			if (isNull(row))
+			{
+				return null;
+			}
+			switch (kind)
+			{
+				case KIND_LONG:
+					return longs[row];
+				case KIND_DOUBLE:
+					return doubles[row];
+				case KIND_STRING:
+					return strings[row];
+				case KIND_BLOB:
+					return blobs[row];
+				case KIND_OBJECT:
+					return objects[row];
+				default:
+					return null;
+			}
+		}
+
+		/**
+		 * Switches the column to the kind of a new value, converting the values read so far if needed.
+		 */
+		void ensureKind(int valueKind, int rowCount)
+		{
+			if (kind == valueKind || kind == KIND_OBJECT)
+			{
+				return;
+			}
+			if (kind == KIND_DOUBLE && valueKind == KIND_LONG)
+			{
+				return;
+			}
+
+			if (kind == KIND_NULL)
+			{
+				kind = valueKind;
+				switch (valueKind)
+				{
+					case KIND_LONG:
+						longs = new long[rowCount];
+						break;
+					case KIND_DOUBLE:
+						doubles = new double[rowCount];
+						break;
+					case KIND_STRING:
+						strings = new String[rowCount];
+						break;
+					case KIND_BLOB:
+						blobs = new byte[rowCount][];
+						break;
+				}
+			}
+			else if (kind == KIND_LONG && valueKind == KIND_DOUBLE)
+			{
+				doubles = new double[rowCount];
+				for (int i = 0; i < rowCount; i++)
+				{
+					doubles[i] = longs[i];
+				}
+				longs = null;
+				kind = KIND_DOUBLE;
+			}
+			else
+			{
+				objects = new Object[rowCount];
+				for (int i = 0; i < rowCount; i++)
+				{
+					objects[i] = get(i);
+				}
+				longs = null;
+				doubles = null;
+				strings = null;
+				blobs = null;
+				kind = KIND_OBJECT;
+			}
+		}
+	}
+
+	private final Column[] _columns;
+	private final int _rowCount;
+
+	/**
+	 * Reads all the rows of a query result into columns, and closes the Cursor.
+	 *
+	 * @param c
+	 *        The query result.
+	 */
+	ColumnarRecordSet(Cursor c)
+	{
+		try
+		{
+			_rowCount = c.getCount();
+			String[] columnNames = c.getColumnNames();
+			_columns = new Column[columnNames.length];
+			for (int col = 0; col < columnNames.length; col++)
+			{
+				_columns[col] = new Column(columnNames[col], _rowCount);
+			}
+
+			int row = 0;
+			while (c.moveToNext())
+			{
+				for (int col = 0; col < _columns.length; col++)
+				{
+					readValue(c, col, _columns[col], row);
+				}
+				row++;
+			}
+		}
+		finally
+		{
+			c.close();
+		}
+	}
+
+	private void readValue(Cursor c, int col, Column column, int row)
+	{
+		switch (c.getType(col))
+		{
+			case Cursor.FIELD_TYPE_NULL:
+				column.setNull(row);
+				break;
+			case Cursor.FIELD_TYPE_INTEGER:
+				column.ensureKind(KIND_LONG, _rowCount);
+				if (column.kind == KIND_LONG)
+				{
+					column.longs[row] = c.getLong(col);
+				}
+				else if (column.kind == KIND_DOUBLE)
+				{
+					column.doubles[row] = c.getLong(col);
+				}
+				else
+				{
+					column.objects[row] = c.getLong(col);
+				}
+				break;
+			case Cursor.FIELD_TYPE_FLOAT:
+				column.ensureKind(KIND_DOUBLE, _rowCount);
+				if (column.kind == KIND_DOUBLE)
+				{
+					column.doubles[row] = c.getDouble(col);
+				}
+				else
+				{
+					column.objects[row] = c.getDouble(col);
+				}
+				break;
+			case Cursor.FIELD_TYPE_BLOB:
+				column.ensureKind(KIND_BLOB, _rowCount);
+				if (column.kind == KIND_BLOB)
+				{
+					column.blobs[row] = c.getBlob(col);
+				}
+				else
+				{
+					column.objects[row] = c.getBlob(col);
+				}
+				break;
+			default:
+				column.ensureKind(KIND_STRING, _rowCount);
+				if (column.kind == KIND_STRING)
+				{
+					column.strings[row] = c.getString(col);
+				}
+				else
+				{
+					column.objects[row] = c.getString(col);
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Builds a DbRecord holding the values of a row.
+	 *
+	 * @param row
+	 *        The row index.
+	 * @return The DbRecord.
+	 */
+	public DbRecord getRecord(int row)
+	{
+		if (row < 0 || row >= _rowCount)
+		{
+			throw new IndexOutOfBoundsException("Row " + row + " of " + _rowCount);
+		}
+
+		DbRecord rec = new DbRecord();
+		for (Column column : _columns)
+		{
+			Object value = column.get(row);
+			if (value == null)
+			{
+				rec.setNull(column.name);
+			}
+			else if (value instanceof Long)
+			{
+				rec.set(column.name, ((Long) value).longValue());
+			}
+			else if (value instanceof Double)
+			{
+				rec.set(column.name, ((Double) value).doubleValue());
+			}
+			else if (value instanceof byte[])
+			{
+				rec.set(column.name, (byte[]) value);
+			}
+			else
+			{
+				rec.set(column.name, value.toString());
+			}
+		}
+		return rec;
+	}
+
+	public int getColumnCount()
+	{
+		return _columns.length;
+	}
+
+	public String[] getColumnNames()
+	{
+		String[] names = new String[_columns.length];
+		for (int col = 0; col < _columns.length; col++)
+		{
+			names[col] = _columns[col].name;
+		}
+		return names;
+	}
+
+	/**
+	 * Gets the index of a column.
+	 *
+	 * @param name
+	 *        The column name.
+	 * @return The column index, or -1 if there is no such column.
+	 */
+	public int getColumnIndex(String name)
+	{
+		for (int col = 0; col < _columns.length; col++)
+		{
+			if (_columns[col].name.equalsIgnoreCase(name))
+			{
+				return col;
+			}
+		}
+		return -1;
+	}
+
+	private int columnIndex(String name)
+	{
+		int col = getColumnIndex(name);
+		if (col < 0)
+		{
+			throw new IllegalArgumentException("No such column: " + name);
+		}
+		return col;
+	}
+
+	private Column column(String name)
+	{
+		return _columns[columnIndex(name)];
+	}
+
+	public boolean isNull(int row, int column)
+	{
+		return _columns[column].isNull(row);
+	}
+
+	public boolean isNull(int row, String column)
+	{
+		return column(column).isNull(row);
+	}
+
+	/**
+	 * Gets a value as a long. NULL values are returned as 0.
+	 */
+	public long getLong(int row, int column)
+	{
+		Column c = _columns[column];
+		if (c.kind == KIND_LONG)
+		{
+			return c.longs[row];
+		}
+		Object value = c.get(row);
+		if (value == null)
+		{
+			return 0;
+		}
+		return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+	}
+
+	public long getLong(int row, String column)
+	{
+		return getLong(row, columnIndex(column));
+	}
+
+	/**
+	 * Gets a value as a double. NULL values are returned as 0.
+	 */
+	public double getDouble(int row, int column)
+	{
+		Column c = _columns[column];
+		if (c.kind == KIND_DOUBLE)
+		{
+			return c.doubles[row];
+		}
+		if (c.kind == KIND_LONG)
+		{
+			return c.longs[row];
+		}
+		Object value = c.get(row);
+		if (value == null)
+		{
+			return 0;
+		}
+		return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+	}
+
+	public double getDouble(int row, String column)
+	{
+		return getDouble(row, columnIndex(column));
+	}
+
+	/**
+	 * Gets a value as a String.
+	 */
+	public String getString(int row, int column)
+	{
+		Object value = _columns[column].get(row);
+		return value == null ? null : value.toString();
+	}
+
+	public String getString(int row, String column)
+	{
+		return getString(row, columnIndex(column));
+	}
+
+	/**
+	 * Gets a blob value.
+	 */
+	public byte[] getBlob(int row, int column)
+	{
+		Object value = _columns[column].get(row);
+		return value instanceof byte[] ? (byte[]) value : null;
+	}
+
+	public byte[] getBlob(int row, String column)
+	{
+		return getBlob(row, columnIndex(column));
+	}
+
+	/**
+	 * Gets a value with its native type: Long, Double, String, byte[] or null.
+	 */
+	public Object getValue(int row, int column)
+	{
+		return _columns[column].get(row);
+	}
+
+	/**
+	 * Gets all the values of an integer column. NULL values are 0; check them with isNull().
+	 *
+	 * @param column
+	 *        The column name.
+	 * @return The backing array of the column if it holds integers; otherwise a converted copy. It must not be
+	 *         modified.
+	 */
+	public long[] getLongColumn(String column)
+	{
+		int col = columnIndex(column);
+		Column c = _columns[col];
+		if (c.kind == KIND_LONG)
+		{
+			return c.longs;
+		}
+		long[] values = new long[_rowCount];
+		for (int row = 0; row < _rowCount; row++)
+		{
+			values[row] = getLong(row, col);
+		}
+		return values;
+	}
+
+	/**
+	 * Gets all the values of a numeric column. NULL values are 0; check them with isNull().
+	 *
+	 * @param column
+	 *        The column name.
+	 * @return The backing array of the column if it holds floats; otherwise a converted copy. It must not be modified.
+	 */
+	public double[] getDoubleColumn(String column)
+	{
+		int col = columnIndex(column);
+		Column c = _columns[col];
+		if (c.kind == KIND_DOUBLE)
+		{
+			return c.doubles;
+		}
+		double[] values = new double[_rowCount];
+		for (int row = 0; row < _rowCount; row++)
+		{
+			values[row] = getDouble(row, col);
+		}
+		return values;
+	}
+
+	/**
+	 * Gets all the values of a column as Strings.
+	 *
+	 * @param column
+	 *        The column name.
+	 * @return The backing array of the column if it holds text; otherwise a converted copy. It must not be modified.
+	 */
+	public String[] getStringColumn(String column)
+	{
+		int col = columnIndex(column);
+		Column c = _columns[col];
+		if (c.kind == KIND_STRING)
+		{
+			return c.strings;
+		}
+		String[] values = new String[_rowCount];
+		for (int row = 0; row < _rowCount; row++)
+		{
+			values[row] = getString(row, col);
+		}
+		return values;
+	}
+
+	/**
+	 * Gets all the values of a blob column.
+	 *
+	 * @param column
+	 *        The column name.
+	 * @return The backing array of the column if it holds blobs; otherwise a copy. It must not be modified.
+	 */
+	public byte[][] getBlobColumn(String column)
+	{
+		int col = columnIndex(column);
+		Column c = _columns[col];
+		if (c.kind == KIND_BLOB)
+		{
+			return c.blobs;
+		}
+		byte[][] values = new byte[_rowCount][];
+		for (int row = 0; row < _rowCount; row++)
+		{
+			values[row] = getBlob(row, col);
+		}
+		return values;
+	}
+
+	/*
+	 * Read side of the List interface, through row views.
+	 */
+
+	@Override
+	public DbRecord get(int arg0)
+	{
+		return getRecord(arg0);
+	}
+
+	@Override
+	public int size()
+	{
+		return _rowCount;
+	}
+}
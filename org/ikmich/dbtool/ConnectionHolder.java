@@ -0,0 +1,173 @@
+package org.ikmich.dbtool;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Keeps the database of a Dbtool open while it is in use. Each acquire() opens the database if needed and counts a
+ * reference; each release() drops one. When the last reference is released, the database stays open for the idle
+ * timeout, so back-to-back and nested operations share one open handle and a warm page cache, and is then closed.
+ * <p>
+ * Only a database the holder opened itself is closed: one the application opened with Dbtool.openDb() stays open
+ * until the application closes it.
+ *
+ * @author Ikenna Agbasimalo
+ */
+final class ConnectionHolder
+{
+	/**
+	 * The default time the database stays open after its last reference is released, in milliseconds.
+	 */
+	static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+	private static ScheduledExecutorService _closer;
+
+	private final Dbtool _dbtool;
+	private int _refCount = 0;
+	private long _idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private ScheduledFuture<?> _pendingClose;
+	private long _closeGeneration = 0;
+	private boolean _opened = false;
+
+	ConnectionHolder(Dbtool dbtool)
+	{
+		_dbtool = dbtool;
+	}
+
+	/**
+	 * Gets the thread that closes idle databases, shared by all the holders.
+	 */
+	private static synchronized ScheduledExecutorService getCloser()
+	{
+		if (_closer == null)
+		{
+			_closer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "Dbtool idle close");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return _closer;
+	}
+
+	/**
+	 * Opens the database if it is not open, and counts a reference to it.
+	 *
+	 * @return The open database.
+	 */
+	synchronized SQLiteDatabase acquire()
+	{
+		cancelPendingClose();
+		if (!_dbtool.isOpen())
+		{
+			_opened = true;
+		}
+		SQLiteDatabase db = _dbtool.openDb();
+		_refCount++;
+		return db;
+	}
+
+	/**
+	 * Drops a reference to the database. When none are left, the database is closed after the idle timeout, if the
+	 * holder opened it.
+	 */
+	synchronized void release()
+	{
+		if (_refCount == 0)
+		{
+			return;
+		}
+		if (--_refCount > 0 || !_opened)
+		{
+			return;
+		}
+
+		if (_idleTimeout == 0)
+		{
+			_dbtool.closeDb();
+		}
+		else if (_idleTimeout > 0)
+		{
+			final long generation = _closeGeneration;
+			_pendingClose = getCloser().schedule(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					closeIfIdle(generation);
+				}
+			}, _idleTimeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private synchronized void closeIfIdle(long generation)
+	{
+		// A later acquire() may have cancelled this close after it started running.
+		if (generation == _closeGeneration && _refCount == 0 && _opened)
+		{
+			_pendingClose = null;
+			_dbtool.closeDb();
+		}
+	}
+
+	/**
+	 * Closes the database now, whatever references are held, and forgets them.
+	 */
+	synchronized void closeNow()
+	{
+		reset();
+		_dbtool.closeDb();
+	}
+
+	/**
+	 * Forgets the references held and any pending close. Called when the database is closed.
+	 */
+	synchronized void reset()
+	{
+		cancelPendingClose();
+		_refCount = 0;
+		_opened = false;
+	}
+
+	private void cancelPendingClose()
+	{
+		_closeGeneration++;
+		if (_pendingClose != null)
+		{
+			_pendingClose.cancel(false);
+			_pendingClose = null;
+		}
+	}
+
+	/**
+	 * Sets how long the database stays open after its last reference is released.
+	 *
+	 * @param millis
+	 *        The timeout in milliseconds. 0 closes the database as soon as it is released; a negative value keeps it
+	 *        open until closeNow() or Dbtool.closeDb() is called.
+	 */
+	synchronized void setIdleTimeout(long millis)
+	{
+		_idleTimeout = millis;
+	}
+
+	synchronized long getIdleTimeout()
+	{
+		return _idleTimeout;
+	}
+
+	synchronized int getRefCount()
+	{
+		return _refCount;
+	}
+}
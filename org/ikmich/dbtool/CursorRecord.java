@@ -0,0 +1,270 @@
+package org.ikmich.dbtool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/**
+ * A read-only DbRecord view of one row of a Cursor. Nothing is copied when the view is created: each getter moves the
+ * Cursor to the view's row and decodes only the field asked for, so reading 2 columns of a wide row never decodes the
+ * other ones. Returned by the CursorRecordSet of dbtool.runView().
+ * <p>
+ * The view is only valid until its CursorRecordSet is closed. Call toRecord() to promote it to an owned DbRecord when
+ * the values are needed after that.
+ *
+ * @author Ikenna Agbasimalo
+ */
+public class CursorRecord extends DbRecord
+{
+	private final Cursor _cursor;
+	private final String[] _columnNames;
+	private final int _position;
+
+	CursorRecord(Cursor cursor, String[] columnNames, int position)
+	{
+		super((ContentValues) null);
+		_cursor = cursor;
+		_columnNames = columnNames;
+		_position = position;
+	}
+
+	/**
+	 * Gets the position of the row in the Cursor.
+	 */
+	public int getPosition()
+	{
+		return _position;
+	}
+
+	/**
+	 * Copies the values of the row into an owned DbRecord, which stays valid after the Cursor is closed.
+	 *
+	 * @return The DbRecord.
+	 */
+	public DbRecord toRecord()
+	{
+		moveToRow();
+		DbRecord rec = new DbRecord();
+		DbtoolActionUnit.readRow(_cursor, _columnNames, rec);
+		return rec;
+	}
+
+	private void moveToRow()
+	{
+		if (_cursor.isClosed())
+		{
+			throw new IllegalStateException("The record set of this view has been closed.");
+		}
+		if (_cursor.getPosition() != _position && !_cursor.moveToPosition(_position))
+		{
+			throw new IllegalStateException("Row " + _position + " is no longer in the Cursor.");
+		}
+	}
+
+	/**
+	 * Moves to the row and gets the index of the column, or -1 if there is no such column.
+	 */
+	private int column(String key)
+	{
+		moveToRow();
+		return _cursor.getColumnIndex(key);
+	}
+
+	/**
+	 * Moves to the row and gets the index of a column holding a primitive value, which can be neither missing nor
+	 * NULL.
+	 */
+	private int primitiveColumn(String key)
+	{
+		int col = column(key);
+		if (col < 0)
+		{
+			throw new IllegalArgumentException("No such column: " + key);
+		}
+		if (_cursor.isNull(col))
+		{
+			throw new NullPointerException("Column " + key + " is NULL.");
+		}
+		return col;
+	}
+
+	@Override
+	public String getString(String key)
+	{
+		int col = column(key);
+		return col < 0 ? null : _cursor.getString(col);
+	}
+
+	@Override
+	public int getInt(String key)
+	{
+		return _cursor.getInt(primitiveColumn(key));
+	}
+
+	@Override
+	public long getLong(String key)
+	{
+		return _cursor.getLong(primitiveColumn(key));
+	}
+
+	@Override
+	public short getShort(String key)
+	{
+		return _cursor.getShort(primitiveColumn(key));
+	}
+
+	@Override
+	public double getDouble(String key)
+	{
+		return _cursor.getDouble(primitiveColumn(key));
+	}
+
+	@Override
+	public float getFloat(String key)
+	{
+		return _cursor.getFloat(primitiveColumn(key));
+	}
+
+	@Override
+	public byte getByte(String key)
+	{
+		return (byte) _cursor.getInt(primitiveColumn(key));
+	}
+
+	@Override
+	public boolean getBoolean(String key)
+	{
+		int col = primitiveColumn(key);
+		if (_cursor.getType(col) == Cursor.FIELD_TYPE_STRING)
+		{
+			String value = _cursor.getString(col);
+			return "1".equals(value) || Boolean.parseBoolean(value);
+		}
+		return _cursor.getLong(col) != 0;
+	}
+
+	@Override
+	public byte[] getByteArray(String key)
+	{
+		int col = column(key);
+		return col < 0 ? null : _cursor.getBlob(col);
+	}
+
+	@Override
+	public boolean isNull(String key)
+	{
+		int col = column(key);
+		return col < 0 || _cursor.isNull(col);
+	}
+
+	/**
+	 * Gets the values of the row as ContentValues. They are copied out of the Cursor.
+	 */
+	@Override
+	public ContentValues toContentValues()
+	{
+		return toRecord().toContentValues();
+	}
+
+	@Override
+	public ArrayList<String> getFieldNames()
+	{
+		return new ArrayList<String>(Arrays.asList(_columnNames));
+	}
+
+	/**
+	 * Gets the values of the row. They are copied out of the Cursor.
+	 */
+	@Override
+	public ArrayList<Object> getFieldValues()
+	{
+		return toRecord().getFieldValues();
+	}
+
+	/**
+	 * Copies the values of the row into an owned DbRecord. Same as toRecord().
+	 */
+	@Override
+	public DbRecord copy()
+	{
+		return toRecord();
+	}
+
+	/*
+	 * The view is read-only.
+	 */
+
+	@Override
+	public DbRecord setAll(DbRecord other)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public DbRecord set(String key, String value)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public DbRecord set(String key, int value)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public DbRecord set(String key, long value)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public DbRecord set(String key, short value)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public DbRecord set(String key, double value)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public DbRecord set(String key, float value)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public DbRecord set(String key, byte value)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public DbRecord set(String key, boolean value)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public DbRecord set(String key, byte[] value)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public DbRecord setNull(String key)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	void clear()
+	{
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,105 @@
+package org.ikmich.dbtool;
+
+import java.io.Closeable;
+
+import android.database.Cursor;
+
+/**
+ * A read-only DbRecordSet that keeps a query result in its Cursor and hands out CursorRecord views of its rows, instead
+ * of copying every field of every row into a DbRecord up front. Returned by dbtool.runView() at the end of a 'select'
+ * query chain.
+ * <p>
+ * Fields are decoded from the CursorWindow only when a getter asks for them, which saves most of the work on wide
+ * tables when a screen shows a few columns of each row. A view that must outlive the set is promoted to an owned
+ * DbRecord with CursorRecord.toRecord(), or getRecord(row).
+ * <p>
+ * The set holds the Cursor open: close() it when done. Its views share the Cursor, so the set should be read from one
+ * thread.
+ *
+ * @author Ikenna Agbasimalo
+ */
+public class CursorRecordSet extends ReadOnlyRecordSet implements Closeable
+{
+	private final Cursor _cursor;
+	private final String[] _columnNames;
+	private final int _count;
+
+	CursorRecordSet(Cursor cursor)
+	{
+		_cursor = cursor;
+		_columnNames = cursor.getColumnNames();
+		_count = cursor.getCount();
+	}
+
+	/**
+	 * Gets a view of a row, which reads its fields from the Cursor on demand.
+	 *
+	 * @param row
+	 *        The row index.
+	 * @return The CursorRecord.
+	 */
+	public CursorRecord getView(int row)
+	{
+		if (row < 0 || row >= _count)
+		{
+			throw new IndexOutOfBoundsException("Row " + row + " of " + _count);
+		}
+		return new CursorRecord(_cursor, _columnNames, row);
+	}
+
+	/**
+	 * Copies the values of a row into an owned DbRecord, which stays valid after the set is closed.
+	 *
+	 * @param row
+	 *        The row index.
+	 * @return The DbRecord.
+	 */
+	public DbRecord getRecord(int row)
+	{
+		return getView(row).toRecord();
+	}
+
+	/**
+	 * Gets the names of the columns of the result.
+	 */
+	public String[] getColumnNames()
+	{
+		return _columnNames.clone();
+	}
+
+	/**
+	 * Checks whether the set has been closed.
+	 */
+	public boolean isClosed()
+	{
+		return _cursor.isClosed();
+	}
+
+	/**
+	 * Closes the underlying Cursor. The views of the set can no longer be read after this.
+	 */
+	@Override
+	public void close()
+	{
+		if (!_cursor.isClosed())
+		{
+			_cursor.close();
+		}
+	}
+
+	/*
+	 * Read side of the List interface, through row views.
+	 */
+
+	@Override
+	public DbRecord get(int arg0)
+	{
+		return getView(arg0);
+	}
+
+	@Override
+	public int size()
+	{
+		return _count;
+	}
+}
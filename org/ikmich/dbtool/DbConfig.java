@@ -0,0 +1,245 @@
+package org.ikmich.dbtool;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * The connection settings of a database: its journal mode and the PRAGMAs applied to the primary connection when it
+ * is configured, before the database is created or opened. Passed to dbtool.createDb(dbName, config) or
+ * dbtool.openDb(dbName, config), or registered with dbtool.setDbConfig(dbName, config).
+ * <p>
+ * The journal mode, page size and synchronous setting hold for the whole database. cache_size, mmap_size, temp_store
+ * and busy_timeout are per connection: Android calls onConfigure(...) for the primary connection only, so the extra
+ * read connections it opens in WAL mode keep SQLite's defaults. The connections of dbtool.enableReadPool(...) do get
+ * them, as Dbtool opens and configures those itself.
+ * <p>
+ * A setting left unset keeps SQLite's (or Android's) default. The presets throughput(), durability() and readMostly()
+ * cover the common cases, and can be adjusted further with the setters.
+ *
+ * @author Ikenna Agbasimalo
+ */
+public class DbConfig
+{
+	public static final String JOURNAL_WAL = "WAL";
+	public static final String JOURNAL_DELETE = "DELETE";
+	public static final String JOURNAL_TRUNCATE = "TRUNCATE";
+	public static final String JOURNAL_PERSIST = "PERSIST";
+	public static final String JOURNAL_MEMORY = "MEMORY";
+
+	public static final String SYNCHRONOUS_OFF = "OFF";
+	public static final String SYNCHRONOUS_NORMAL = "NORMAL";
+	public static final String SYNCHRONOUS_FULL = "FULL";
+	public static final String SYNCHRONOUS_EXTRA = "EXTRA";
+
+	public static final String TEMP_STORE_DEFAULT = "DEFAULT";
+	public static final String TEMP_STORE_FILE = "FILE";
+	public static final String TEMP_STORE_MEMORY = "MEMORY";
+
+	private String _journalMode;
+	private String _synchronous;
+	private Integer _cacheSize;
+	private Long _mmapSize;
+	private String _tempStore;
+	private Integer _pageSize;
+	private Integer _busyTimeout;
+
+	/**
+	 * WAL journal with synchronous=NORMAL: commits do not wait for an fsync, at the cost of losing the last
+	 * transactions (but never corrupting the database) on power loss. Temp tables and indices are kept in memory, with
+	 * an 8 MB page cache.
+	 */
+	public static DbConfig throughput()
+	{
+		return new DbConfig().journalMode(JOURNAL_WAL).synchronous(SYNCHRONOUS_NORMAL).cacheSizeKb(8 * 1024)
+			.tempStore(TEMP_STORE_MEMORY).busyTimeout(5000);
+	}
+
+	/**
+	 * WAL journal with synchronous=FULL: every commit is synced to storage before it returns.
+	 */
+	public static DbConfig durability()
+	{
+		return new DbConfig().journalMode(JOURNAL_WAL).synchronous(SYNCHRONOUS_FULL).busyTimeout(5000);
+	}
+
+	/**
+	 * For databases mostly read: WAL journal, so reads do not wait on writes, with a 16 MB page cache and 64 MB of
+	 * memory-mapped I/O.
+	 */
+	public static DbConfig readMostly()
+	{
+		return new DbConfig().journalMode(JOURNAL_WAL).synchronous(SYNCHRONOUS_NORMAL).cacheSizeKb(16 * 1024)
+			.mmapSize(64L * 1024 * 1024).tempStore(TEMP_STORE_MEMORY).busyTimeout(5000);
+	}
+
+	/**
+	 * Sets the journal mode, one of the JOURNAL_* constants. WAL is turned on with
+	 * SQLiteDatabase.enableWriteAheadLogging(), which also lets Android open more than one connection to the database.
+	 */
+	public DbConfig journalMode(String journalMode)
+	{
+		_journalMode = journalMode;
+		return this;
+	}
+
+	/**
+	 * Sets PRAGMA synchronous, one of the SYNCHRONOUS_* constants.
+	 */
+	public DbConfig synchronous(String synchronous)
+	{
+		_synchronous = synchronous;
+		return this;
+	}
+
+	/**
+	 * Sets PRAGMA cache_size, as a number of pages.
+	 */
+	public DbConfig cacheSizePages(int pages)
+	{
+		_cacheSize = pages;
+		return this;
+	}
+
+	/**
+	 * Sets PRAGMA cache_size, as a size in kibibytes, whatever the page size.
+	 */
+	public DbConfig cacheSizeKb(int kb)
+	{
+		_cacheSize = -kb;
+		return this;
+	}
+
+	/**
+	 * Sets PRAGMA mmap_size, in bytes. 0 turns memory-mapped I/O off.
+	 */
+	public DbConfig mmapSize(long bytes)
+	{
+		_mmapSize = bytes;
+		return this;
+	}
+
+	/**
+	 * Sets PRAGMA temp_store, one of the TEMP_STORE_* constants.
+	 */
+	public DbConfig tempStore(String tempStore)
+	{
+		_tempStore = tempStore;
+		return this;
+	}
+
+	/**
+	 * Sets PRAGMA page_size, in bytes. It only takes effect on a new database, as the page size of an existing one
+	 * cannot change once it is in WAL mode.
+	 */
+	public DbConfig pageSize(int bytes)
+	{
+		_pageSize = bytes;
+		return this;
+	}
+
+	/**
+	 * Sets PRAGMA busy_timeout: how long, in milliseconds, a connection waits for a lock held by another connection
+	 * before failing with SQLITE_BUSY.
+	 */
+	public DbConfig busyTimeout(int millis)
+	{
+		_busyTimeout = millis;
+		return this;
+	}
+
+	public String getJournalMode()
+	{
+		return _journalMode;
+	}
+
+	public boolean isWal()
+	{
+		return JOURNAL_WAL.equalsIgnoreCase(_journalMode);
+	}
+
+	/**
+	 * Applies the settings to the primary connection. Called from SQLiteOpenHelper.onConfigure(...), before the
+	 * database is created, upgraded or opened.
+	 *
+	 * @param db
+	 *        The primary connection.
+	 */
+	public void apply(SQLiteDatabase db)
+	{
+		// The page size has to be set before the journal mode is switched to WAL.
+		if (_pageSize != null)
+		{
+			pragma(db, "page_size", _pageSize);
+		}
+
+		if (_journalMode != null)
+		{
+			if (isWal())
+			{
+				db.enableWriteAheadLogging();
+			}
+			else
+			{
+				db.disableWriteAheadLogging();
+				pragma(db, "journal_mode", _journalMode);
+			}
+		}
+
+		if (_synchronous != null)
+		{
+			pragma(db, "synchronous", _synchronous);
+		}
+		applyToReader(db);
+	}
+
+	/**
+	 * Applies the per-connection settings to a read-only connection. The journal mode and page size are properties of
+	 * the database file, set through the writable connection, so they are left alone.
+	 *
+	 * @param db
+	 *        The read-only connection.
+	 */
+	void applyToReader(SQLiteDatabase db)
+	{
+		if (_cacheSize != null)
+		{
+			pragma(db, "cache_size", _cacheSize);
+		}
+		if (_mmapSize != null)
+		{
+			pragma(db, "mmap_size", _mmapSize);
+		}
+		if (_tempStore != null)
+		{
+			pragma(db, "temp_store", _tempStore);
+		}
+		if (_busyTimeout != null)
+		{
+			pragma(db, "busy_timeout", _busyTimeout);
+		}
+	}
+
+	/**
+	 * Sets a PRAGMA. Run as a query, as some PRAGMAs return the new value as a row, which execSQL(...) rejects.
+	 */
+	private static void pragma(SQLiteDatabase db, String name, Object value)
+	{
+		Cursor c = db.rawQuery("PRAGMA " + name + "=" + value, null);
+		try
+		{
+			c.moveToFirst();
+		}
+		finally
+		{
+			c.close();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "DbConfig[journal_mode=" + _journalMode + ", synchronous=" + _synchronous + ", cache_size="
+			+ _cacheSize + ", mmap_size=" + _mmapSize + ", temp_store=" + _tempStore + ", page_size=" + _pageSize
+			+ ", busy_timeout=" + _busyTimeout + "]";
+	}
+}
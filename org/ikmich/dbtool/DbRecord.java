@@ -171,6 +171,112 @@ public class DbRecord
 		return values.getAsByteArray(key);
 	}
 
+	/**
+	 * Sets a NULL value for the key.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public DbRecord setNull(String key)
+	{
+		values.putNull(key);
+
+		keyList.add(key);
+		valueList.add(null);
+
+		return this;
+	}
+
+	/**
+	 * Checks whether the value identified by the key is NULL or absent.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public boolean isNull(String key)
+	{
+		return values.get(key) == null;
+	}
+
+	/**
+	 * Removes all the fields of this DbRecord, so it can be reused for another row.
+	 */
+	void clear()
+	{
+		values.clear();
+		if (keyList != null)
+		{
+			keyList.clear();
+			valueList.clear();
+		}
+	}
+
+	/**
+	 * Copies this DbRecord, with copies of its byte[] values, so that the copy can be changed without changing this
+	 * DbRecord.
+	 * 
+	 * @return The copy.
+	 */
+	public DbRecord copy()
+	{
+		DbRecord copy = new DbRecord(new ContentValues(values));
+		for (String key : values.keySet())
+		{
+			Object value = values.get(key);
+			if (value instanceof byte[])
+			{
+				copy.values.put(key, ((byte[]) value).clone());
+			}
+		}
+		if (keyList != null)
+		{
+			copy.keyList = new ArrayList<String>(keyList);
+			copy.valueList = new ArrayList<Object>(valueList.size());
+			for (Object value : valueList)
+			{
+				copy.valueList.add(value instanceof byte[] ? ((byte[]) value).clone() : value);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Sets the fields of another DbRecord on this one, replacing the values of the fields both have.
+	 * 
+	 * @param other
+	 *        The DbRecord whose fields to set.
+	 * @return This DbRecord.
+	 */
+	public DbRecord setAll(DbRecord other)
+	{
+		ContentValues otherValues = other.toContentValues();
+		values.putAll(otherValues);
+		for (String key : otherValues.keySet())
+		{
+			Object value = otherValues.get(key);
+			if (value instanceof byte[])
+			{
+				value = ((byte[]) value).clone();
+				values.put(key, (byte[]) value);
+			}
+
+			if (keyList != null)
+			{
+				int index = keyList.indexOf(key);
+				if (index >= 0)
+				{
+					valueList.set(index, value);
+				}
+				else
+				{
+					keyList.add(key);
+					valueList.add(value);
+				}
+			}
+		}
+		return this;
+	}
+
 	/**
 	 * Gets the ContentValues component of this DbRecord.
 	 * 
@@ -0,0 +1,82 @@
+package org.ikmich.dbtool;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import android.database.Cursor;
+
+/**
+ * Iterates over the rows of a query result, reading them from the Cursor one at a time instead of loading them all
+ * into a DbRecordSet. Returned by dbtool.iterate() at the end of a 'select' query chain.
+ * <p>
+ * The same DbRecord object is returned by every call to next(), refilled with the values of the current row, so
+ * iterating a large table runs in constant memory. Copy the values out of it if they are needed after the next row is
+ * read.
+ * <p>
+ * The Cursor is closed once the last row has been read. Call close() to release it when stopping early.
+ *
+ * @author Ikenna Agbasimalo
+ */
+public class DbRecordIterator implements Iterator<DbRecord>, Closeable
+{
+	private final Cursor _cursor;
+	private final String[] _columnNames;
+	private final DbRecord _record;
+	private boolean _advanced = false;
+	private boolean _hasNext = false;
+
+	DbRecordIterator(Cursor cursor)
+	{
+		_cursor = cursor;
+		_columnNames = cursor.getColumnNames();
+		_record = new DbRecord();
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if (!_advanced)
+		{
+			_hasNext = !_cursor.isClosed() && _cursor.moveToNext();
+			_advanced = true;
+			if (!_hasNext)
+			{
+				close();
+			}
+		}
+		return _hasNext;
+	}
+
+	@Override
+	public DbRecord next()
+	{
+		if (!hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		_advanced = false;
+
+		_record.clear();
+		DbtoolActionUnit.readRow(_cursor, _columnNames, _record);
+		return _record;
+	}
+
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Closes the underlying Cursor.
+	 */
+	@Override
+	public void close()
+	{
+		if (!_cursor.isClosed())
+		{
+			_cursor.close();
+		}
+	}
+}
@@ -1,8 +1,18 @@
 package org.ikmich.dbtool;
 
 import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.ikmich.dbtool.query.StatementCache;
+import org.ikmich.dbtool.table.SchemaCatalog;
 import org.ikmich.dbtool.table.TableNotFoundException;
 import org.ikmich.dbtool.table.TableProfile;
 
@@ -13,9 +23,13 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteTransactionListener;
 
 /**
  * Utility class to help with carrying out common actions on a database.
+ * <p>
+ * Each thread builds its query chains separately, so one Dbtool instance can
+ * be used from many threads at once.
  * 
  * @author Ikenna Agbasimalo
  */
@@ -25,11 +39,42 @@ public class Dbtool implements IDbtoolAction
 	private String _dbName;
 	private int _dbVersion = 1;
 	private DbHelper _dbHelper;
-	private Stack<DbtoolActionUnit> _actionUnitStack;
-	private DbtoolActionUnit _currentActionUnit;
+	private final ThreadLocal<Stack<DbtoolActionUnit>> _actionUnitStacks = new ThreadLocal<Stack<DbtoolActionUnit>>()
+	{
+		@Override
+		protected Stack<DbtoolActionUnit> initialValue()
+		{
+			return new Stack<DbtoolActionUnit>();
+		}
+	};
+	private StatementCache _statementCache;
+	private int _statementCacheSize = StatementCache.DEFAULT_CAPACITY;
+	private final HashMap<String, DbConfig> _dbConfigs = new HashMap<String, DbConfig>();
+	private final ConnectionHolder _connection = new ConnectionHolder(this);
+	private volatile ReadConnectionPool _readPool;
+	private volatile int _readPoolSize = 0;
+	private volatile long _readPoolBorrowTimeout = ReadConnectionPool.DEFAULT_BORROW_TIMEOUT;
+	private volatile ExecutorService _readExecutor;
+	private volatile ExecutorService _writeExecutor;
+	private volatile WriteScheduler _writeScheduler;
+	private int _writeBatchSize = 0;
+	private long _writeBatchDelay = WriteScheduler.DEFAULT_BATCH_DELAY;
+	private final InvalidationTracker _invalidationTracker = new InvalidationTracker();
+	private volatile ResultCache _resultCache;
+	private volatile SchemaCatalog _schemaCatalog;
+	private volatile long _schemaGeneration = 0;
+	private final ThreadLocal<TransactionScope> _transactionScope = new ThreadLocal<TransactionScope>()
+	{
+		@Override
+		protected TransactionScope initialValue()
+		{
+			return new TransactionScope();
+		}
+	};
 
 	private static Context _context;
 	private static Dbtool _instance;
+	private static volatile Boolean _supportsUpsert;
 
 	/**
 	 * Private constructor. Creates a Dbtool instance.
@@ -55,7 +100,6 @@ public class Dbtool implements IDbtoolAction
 	{
 		_context = c;
 		setDb(db);
-		_actionUnitStack = new Stack<DbtoolActionUnit>();
 	}
 
 	/**
@@ -105,18 +149,27 @@ public class Dbtool implements IDbtoolAction
 		return new Dbtool(c);
 	}
 
+	/*
+	 * Gets the action units of the calling thread. Each thread builds its
+	 * queries on its own stack, so threads sharing the Dbtool instance do not
+	 * run each other's queries.
+	 */
+	private Stack<DbtoolActionUnit> actionUnitStack()
+	{
+		return _actionUnitStacks.get();
+	}
+
 	private void addActionUnit(DbtoolActionUnit actionUnit)
 	{
 		if (okToStartNewActionUnit())
 		{
-			_actionUnitStack.push(actionUnit);
-			_currentActionUnit = actionUnit;
+			actionUnitStack().push(actionUnit);
 		}
 	}
 
 	private DbtoolActionUnit getLatestActionUnit()
 	{
-		return _actionUnitStack.elementAt(_actionUnitStack.size() - 1);
+		return actionUnitStack().peek();
 	}
 
 	/*
@@ -126,8 +179,7 @@ public class Dbtool implements IDbtoolAction
 	 */
 	private DbtoolActionUnit popActionUnit()
 	{
-		_currentActionUnit = _actionUnitStack.pop();
-		return _currentActionUnit;
+		return actionUnitStack().pop();
 	}
 
 	private boolean okToStartNewActionUnit()
@@ -150,7 +202,7 @@ public class Dbtool implements IDbtoolAction
 	 */
 	private boolean hasActionUnit()
 	{
-		return _actionUnitStack.size() > 0 ? true : false;
+		return actionUnitStack().size() > 0 ? true : false;
 	}
 
 	/**
@@ -171,7 +223,7 @@ public class Dbtool implements IDbtoolAction
 		if (_db != null && !_dbName.equals(getDbName(_db)))
 		{
 			initializeDbHelper(_dbName);
-			_db = _dbHelper.getWritableDatabase();
+			replaceDb(_dbHelper.getWritableDatabase());
 		}
 	}
 
@@ -184,10 +236,36 @@ public class Dbtool implements IDbtoolAction
 	 */
 	public void setDb(SQLiteDatabase db)
 	{
-		_db = db;
+		replaceDb(db);
 		extractDbName(_db);
 	}
 
+	/**
+	 * Makes a database the one in use, dropping what was cached for the
+	 * previous one. When it is another database file, the read pool (whose
+	 * connections are opened on the previous file) is closed, and the
+	 * acquireDb() references to the previous database are forgotten.
+	 * 
+	 * @param db
+	 *        The SQLiteDatabase.
+	 */
+	private void replaceDb(SQLiteDatabase db)
+	{
+		if (db == _db)
+		{
+			return;
+		}
+		if (_db != null && (db == null || !db.getPath().equals(_db.getPath())))
+		{
+			closeReadPool();
+			_connection.reset();
+			_schemaGeneration++;
+		}
+		clearResultCache();
+		invalidateSchemaCatalog();
+		_db = db;
+	}
+
 	/**
 	 * Extracts the database name from an SQLiteDatabase.
 	 * 
@@ -215,6 +293,48 @@ public class Dbtool implements IDbtoolAction
 		return _db;
 	}
 
+	/**
+	 * Gets the cache of compiled statements used by the insert, update and delete queries run on the current database.
+	 * Its hit, miss and eviction counters can be used to size it with setStatementCacheSize().
+	 * 
+	 * @return The StatementCache, or null if no database is associated with this Dbtool instance.
+	 */
+	public synchronized StatementCache getStatementCache()
+	{
+		if (_db == null)
+		{
+			return null;
+		}
+
+		if (_statementCache == null)
+		{
+			_statementCache = new StatementCache(_db, _statementCacheSize);
+		}
+		else
+		{
+			_statementCache.setDatabase(_db);
+		}
+		return _statementCache;
+	}
+
+	/**
+	 * Sets the maximum number of compiled statements to cache for the current database. A size of 0 disables the
+	 * cache.
+	 * 
+	 * @param size
+	 *        The cache size.
+	 * @return The Dbtool instance.
+	 */
+	public Dbtool setStatementCacheSize(int size)
+	{
+		_statementCacheSize = size;
+		if (_statementCache != null)
+		{
+			_statementCache.setCapacity(size);
+		}
+		return this;
+	}
+
 	/**
 	 * Gets the sqlite database for the Dbtool instance represented by the name
 	 * with which it's stored.
@@ -307,24 +427,82 @@ public class Dbtool implements IDbtoolAction
 		if (_db == null)
 			throw new NoDatabaseForDbtoolException();
 
-		//openDb();
-		try
+		SchemaCatalog catalog = _schemaCatalog;
+		if (catalog != null)
 		{
-			DatabaseUtils.queryNumEntries(_db, table);
-
-			//If no SQLiteException occurs here, the table is assumed to exist.
-			return true;
+			return catalog.hasTable(table);
 		}
-		catch (SQLiteException ex)
+
+		// The catalog is read from the open database, which may have been closed when idle.
+		acquireDb();
+		try
 		{
-			return false;
+			catalog = getSchemaCatalog();
+			return catalog != null && catalog.hasTable(table);
 		}
 		finally
 		{
-			//closeDb();
+			releaseDb();
+		}
+	}
+
+	/**
+	 * Gets the schema of the database: its tables and their columns. It is
+	 * read once, and read again only after DDL (CREATE, DROP or ALTER) run
+	 * through createTable(...), dropTable(...) or exec(...), or after the
+	 * database is reopened. Call invalidateSchemaCatalog() after changing the
+	 * schema by other means.
+	 * 
+	 * @return The SchemaCatalog, or null if the database is not open.
+	 */
+	public SchemaCatalog getSchemaCatalog()
+	{
+		SchemaCatalog catalog = _schemaCatalog;
+		if (catalog != null)
+		{
+			return catalog;
+		}
+		synchronized (this)
+		{
+			if (_schemaCatalog == null && _db != null && _db.isOpen())
+			{
+				_schemaCatalog = SchemaCatalog.load(_db);
+			}
+			return _schemaCatalog;
 		}
 	}
 
+	/**
+	 * Makes the schema be read again on next use.
+	 */
+	public void invalidateSchemaCatalog()
+	{
+		_schemaCatalog = null;
+	}
+
+	/**
+	 * Gets a number that changes each time the tables may have been replaced:
+	 * after DDL run through exec(...) (and so createTable(...) and
+	 * dropTable(...)), a switch to another database, or dropDb(...). Caches
+	 * of rows kept outside the Dbtool compare it to know when to clear.
+	 * 
+	 * @return The schema generation.
+	 */
+	public long getSchemaGeneration()
+	{
+		return _schemaGeneration;
+	}
+
+	/**
+	 * Checks whether a statement changes the schema.
+	 */
+	private static boolean isDdl(String sql)
+	{
+		String s = sql.trim();
+		return s.regionMatches(true, 0, "CREATE", 0, 6) || s.regionMatches(true, 0, "DROP", 0, 4)
+			|| s.regionMatches(true, 0, "ALTER", 0, 5);
+	}
+
 	/**
 	 * Checks if a database table in the database associated with the current
 	 * Dbtool instance is empty.
@@ -338,13 +516,17 @@ public class Dbtool implements IDbtoolAction
 		if (_db == null)
 			throw new NoDatabaseForDbtoolException();
 
-		if (!this.tableExists(table))
-			throw new TableNotFoundException();
-
-		openDb();
+		acquireDb();
 		try
 		{
-			return DatabaseUtils.queryNumEntries(_db, table) < 1;
+			if (!this.tableExists(table))
+				throw new TableNotFoundException();
+
+			return !getAll().from(table).exists();
+		}
+		catch (TableNotFoundException ex)
+		{
+			throw ex;
 		}
 		catch (Exception ex)
 		{
@@ -352,7 +534,7 @@ public class Dbtool implements IDbtoolAction
 		}
 		finally
 		{
-			closeDb();
+			releaseDb();
 		}
 	}
 
@@ -364,7 +546,7 @@ public class Dbtool implements IDbtoolAction
 	 */
 	public Dbtool getAll()
 	{
-		addActionUnit(new DbtoolActionUnit(_db).getAll());
+		addActionUnit(new DbtoolActionUnit(this).getAll());
 		return this;
 	}
 
@@ -374,7 +556,7 @@ public class Dbtool implements IDbtoolAction
 	 */
 	public Dbtool selectAll()
 	{
-		addActionUnit(new DbtoolActionUnit(_db).selectAll());
+		addActionUnit(new DbtoolActionUnit(this).selectAll());
 		return this;
 	}
 
@@ -387,13 +569,13 @@ public class Dbtool implements IDbtoolAction
 	 */
 	public Dbtool get(String[] columns)
 	{
-		addActionUnit(new DbtoolActionUnit(_db).get(columns));
+		addActionUnit(new DbtoolActionUnit(this).get(columns));
 		return this;
 	}
 
 	public Dbtool select(String[] columns)
 	{
-		addActionUnit(new DbtoolActionUnit(_db).select(columns));
+		addActionUnit(new DbtoolActionUnit(this).select(columns));
 		return this;
 	}
 
@@ -406,7 +588,7 @@ public class Dbtool implements IDbtoolAction
 	 */
 	public Dbtool get(String columns)
 	{
-		addActionUnit(new DbtoolActionUnit(_db).get(columns));
+		addActionUnit(new DbtoolActionUnit(this).get(columns));
 		return this;
 	}
 
@@ -418,7 +600,7 @@ public class Dbtool implements IDbtoolAction
 	 */
 	public Dbtool select(String columns)
 	{
-		addActionUnit(new DbtoolActionUnit(_db).select(columns));
+		addActionUnit(new DbtoolActionUnit(this).select(columns));
 		return this;
 	}
 
@@ -431,7 +613,7 @@ public class Dbtool implements IDbtoolAction
 	 */
 	public Dbtool get(Object... columns)
 	{
-		addActionUnit(new DbtoolActionUnit(_db).get(columns));
+		addActionUnit(new DbtoolActionUnit(this).get(columns));
 		return this;
 	}
 
@@ -445,7 +627,7 @@ public class Dbtool implements IDbtoolAction
 	 */
 	public Dbtool select(Object... columns)
 	{
-		addActionUnit(new DbtoolActionUnit(_db).select(columns));
+		addActionUnit(new DbtoolActionUnit(this).select(columns));
 		return this;
 	}
 
@@ -459,7 +641,7 @@ public class Dbtool implements IDbtoolAction
 	 */
 	public Dbtool getString(String column)
 	{
-		addActionUnit(new DbtoolActionUnit(_db).getString(column));
+		addActionUnit(new DbtoolActionUnit(this).getString(column));
 		return this;
 	}
 
@@ -473,7 +655,7 @@ public class Dbtool implements IDbtoolAction
 	 */
 	public Dbtool getInt(String column)
 	{
-		addActionUnit(new DbtoolActionUnit(_db).getInt(column));
+		addActionUnit(new DbtoolActionUnit(this).getInt(column));
 		return this;
 	}
 
@@ -487,14 +669,64 @@ public class Dbtool implements IDbtoolAction
 	 */
 	public Dbtool getFloat(String column)
 	{
-		addActionUnit(new DbtoolActionUnit(_db).getFloat(column));
+		addActionUnit(new DbtoolActionUnit(this).getFloat(column));
 		return this;
 	}
 
+	/**
+	 * Indication to perform a 'select' query to get a single value which is a
+	 * double.
+	 * 
+	 * @param column
+	 *        The column to query.
+	 * @return The Dbtool object, for chaining purposes.
+	 */
 	public Dbtool getDouble(String column)
 	{
-		addActionUnit(new DbtoolActionUnit(_db).getDouble(column));
-		return null;
+		addActionUnit(new DbtoolActionUnit(this).getDouble(column));
+		return this;
+	}
+
+	/**
+	 * Indication to perform a 'select' query to get a single value which is a
+	 * long.
+	 * 
+	 * @param column
+	 *        The column to query.
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool getLong(String column)
+	{
+		addActionUnit(new DbtoolActionUnit(this).getLong(column));
+		return this;
+	}
+
+	/**
+	 * Indication to perform a 'select' query to get a single value which is a
+	 * blob. The result is a byte[].
+	 * 
+	 * @param column
+	 *        The column to query.
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool getBlob(String column)
+	{
+		addActionUnit(new DbtoolActionUnit(this).getBlob(column));
+		return this;
+	}
+
+	/**
+	 * Indication to perform a 'select' query to get a single value which is a
+	 * boolean, stored as a non-zero or zero integer.
+	 * 
+	 * @param column
+	 *        The column to query.
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool getBoolean(String column)
+	{
+		addActionUnit(new DbtoolActionUnit(this).getBoolean(column));
+		return this;
 	}
 
 	/**
@@ -540,7 +772,7 @@ public class Dbtool implements IDbtoolAction
 	{
 		if (okToStartNewActionUnit())
 		{
-			addActionUnit(new DbtoolActionUnit(_db).update(table));
+			addActionUnit(new DbtoolActionUnit(this).update(table));
 		}
 		return this;
 	}
@@ -556,7 +788,7 @@ public class Dbtool implements IDbtoolAction
 	{
 		if (okToStartNewActionUnit())
 		{
-			addActionUnit(new DbtoolActionUnit(_db).update(tables));
+			addActionUnit(new DbtoolActionUnit(this).update(tables));
 		}
 		return this;
 	}
@@ -574,7 +806,7 @@ public class Dbtool implements IDbtoolAction
 	{
 		if (okToStartNewActionUnit())
 		{
-			addActionUnit(new DbtoolActionUnit(_db).insert(values));
+			addActionUnit(new DbtoolActionUnit(this).insert(values));
 		}
 		return this;
 	}
@@ -591,7 +823,7 @@ public class Dbtool implements IDbtoolAction
 	{
 		if (okToStartNewActionUnit())
 		{
-			addActionUnit(new DbtoolActionUnit(_db).into(table));
+			addActionUnit(new DbtoolActionUnit(this).into(table));
 		}
 		return this;
 	}
@@ -607,7 +839,120 @@ public class Dbtool implements IDbtoolAction
 	{
 		if (okToStartNewActionUnit())
 		{
-			addActionUnit(new DbtoolActionUnit(_db).insertInto(table));
+			addActionUnit(new DbtoolActionUnit(this).insertInto(table));
+		}
+		return this;
+	}
+
+	/**
+	 * Checks whether the device's SQLite supports the ON CONFLICT clause of
+	 * upsertInto(...), added in SQLite 3.24 (Android 11 / API 30). The
+	 * version is read once.
+	 * 
+	 * @return <b>true</b> if upserts are supported; <b>false</b> otherwise.
+	 */
+	public boolean supportsUpsert()
+	{
+		Boolean supported = _supportsUpsert;
+		if (supported == null)
+		{
+			if (_db == null)
+				throw new NoDatabaseForDbtoolException();
+
+			String[] version = DatabaseUtils.stringForQuery(_db, "SELECT sqlite_version()", null).split("\\.");
+			int major = Integer.parseInt(version[0]);
+			int minor = version.length > 1 ? Integer.parseInt(version[1]) : 0;
+			supported = major > 3 || (major == 3 && minor >= 24);
+			_supportsUpsert = supported;
+		}
+		return supported;
+	}
+
+	/**
+	 * Indication to perform an 'upsert' query on a table: an insert that
+	 * updates the existing row instead when it conflicts with a unique
+	 * constraint. Used thus:
+	 * <b>dbtool.upsertInto(table).record(row).onConflict("id").doUpdate("name").run();</b>.
+	 * Needs SQLite 3.24 or later: see supportsUpsert().
+	 * 
+	 * @param table
+	 *        The table name.
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool upsertInto(String table)
+	{
+		if (okToStartNewActionUnit())
+		{
+			addActionUnit(new DbtoolActionUnit(this).upsertInto(table));
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the conflict target of an 'upsert' query: the columns of the
+	 * unique constraint or primary key whose violation turns the insert into
+	 * an update.
+	 * 
+	 * @param columns
+	 *        The column names.
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool onConflict(String... columns)
+	{
+		if (hasActionUnit())
+		{
+			getLatestActionUnit().onConflict(columns);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the columns an 'upsert' query updates on conflict, with the values
+	 * that were to be inserted. Without columns, every inserted column
+	 * outside the conflict target is updated.
+	 * 
+	 * @param columns
+	 *        The column names.
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool doUpdate(String... columns)
+	{
+		if (hasActionUnit())
+		{
+			getLatestActionUnit().doUpdate(columns);
+		}
+		return this;
+	}
+
+	/**
+	 * Makes an 'upsert' query leave the conflicting row as it is.
+	 * 
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool doNothing()
+	{
+		if (hasActionUnit())
+		{
+			getLatestActionUnit().doNothing();
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the conflict algorithm of an 'insert' query, as in
+	 * SQLiteDatabase.insertWithOnConflict(...). Used thus:
+	 * <b>dbtool.insertInto(table).record(row).conflictAlgorithm(SQLiteDatabase.CONFLICT_IGNORE).run();</b>.
+	 * 
+	 * @param conflictAlgorithm
+	 *        One of the SQLiteDatabase.CONFLICT_* constants: CONFLICT_IGNORE,
+	 *        CONFLICT_REPLACE, CONFLICT_ABORT, ...
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool conflictAlgorithm(int conflictAlgorithm)
+	{
+		if (hasActionUnit())
+		{
+			getLatestActionUnit().conflictAlgorithm(conflictAlgorithm);
 		}
 		return this;
 	}
@@ -656,7 +1001,10 @@ public class Dbtool implements IDbtoolAction
 
 	/**
 	 * Specifies a RecordSet for an 'insert' operation. Used thus:
-	 * <b>dbtool.insertInto(table).recordSet(rows).run;</b>.
+	 * <b>dbtool.insertInto(table).recordSet(rows).run;</b>. The rows are
+	 * inserted in one transaction through one compiled statement, and run()
+	 * returns the row ids of all of them as a long[] (-1 for a row that
+	 * failed to insert).
 	 * 
 	 * @param rows
 	 *        The RecordSet object to insert.
@@ -680,6 +1028,46 @@ public class Dbtool implements IDbtoolAction
 		return this.recordSet(rows);
 	}
 
+	/**
+	 * Sets the number of rows inserted per transaction when a RecordSet is
+	 * inserted. Used thus:
+	 * <b>dbtool.insertInto(table).recordSet(rows).batchSize(10000).run();</b>.
+	 * 
+	 * @param batchSize
+	 *        The number of rows to commit at a time, or 0 (the default) to
+	 *        insert all the rows in one transaction.
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool batchSize(int batchSize)
+	{
+		if (hasActionUnit())
+		{
+			getLatestActionUnit().batchSize(batchSize);
+		}
+		return this;
+	}
+
+	/**
+	 * Inserts a RecordSet with multi-VALUES statements, packing as many rows
+	 * into each statement as SQLite's limit on bind variables allows. Used
+	 * thus:
+	 * <b>dbtool.insertInto(table).recordSet(rows).multiRowValues(true).run();</b>.
+	 * In this mode run() returns the row id of the last row of each
+	 * statement, rather than one row id per row.
+	 * 
+	 * @param multiRowValues
+	 *        <b>true</b> to use multi-VALUES statements.
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool multiRowValues(boolean multiRowValues)
+	{
+		if (hasActionUnit())
+		{
+			getLatestActionUnit().multiRowValues(multiRowValues);
+		}
+		return this;
+	}
+
 	/**
 	 * Sets the value of a column in an <b>insert</b> or <b>update</b> query.
 	 * 
@@ -871,7 +1259,7 @@ public class Dbtool implements IDbtoolAction
 	{
 		if (okToStartNewActionUnit())
 		{
-			addActionUnit(new DbtoolActionUnit(_db).deleteFrom(table));
+			addActionUnit(new DbtoolActionUnit(this).deleteFrom(table));
 		}
 		return this;
 	}
@@ -887,7 +1275,7 @@ public class Dbtool implements IDbtoolAction
 	{
 		if (okToStartNewActionUnit())
 		{
-			addActionUnit(new DbtoolActionUnit(_db).deleteFrom(tables));
+			addActionUnit(new DbtoolActionUnit(this).deleteFrom(tables));
 		}
 		return this;
 	}
@@ -928,6 +1316,53 @@ public class Dbtool implements IDbtoolAction
 		return this;
 	}
 
+	/**
+	 * Negates the next condition, or group of conditions, of the <b>where</b>
+	 * clause. Used thus:
+	 * <b>dbtool.getAll().from(table).not().whereEquals(column, value).run();</b>.
+	 * 
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool not()
+	{
+		if (hasActionUnit())
+		{
+			getLatestActionUnit().not();
+		}
+		return this;
+	}
+
+	/**
+	 * Opens a parenthesized group of conditions in the <b>where</b> clause, to
+	 * set their precedence explicitly. Used thus:
+	 * <b>dbtool.getAll().from(table).whereEquals(a, x).and().beginGroup()
+	 * .whereEquals(b, y).or().whereEquals(c, z).endGroup().run();</b>.
+	 * 
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool beginGroup()
+	{
+		if (hasActionUnit())
+		{
+			getLatestActionUnit().beginGroup();
+		}
+		return this;
+	}
+
+	/**
+	 * Closes the group of conditions opened by the last beginGroup() call.
+	 * 
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool endGroup()
+	{
+		if (hasActionUnit())
+		{
+			getLatestActionUnit().endGroup();
+		}
+		return this;
+	}
+
 	public Dbtool whereLike(String field, Object value)
 	{
 		if (hasActionUnit())
@@ -991,7 +1426,27 @@ public class Dbtool implements IDbtoolAction
 		return this;
 	}
 
-	public Dbtool whereArgs(String[] whereArgs)
+	/**
+	 * Adds an IN comparison to the where clause, with one bind slot per value:
+	 * <b>field IN (?,?,...)</b>. SQLite allows at most 999 bind slots per
+	 * statement on older versions, so split larger sets of values.
+	 * 
+	 * @param field
+	 *        The field name.
+	 * @param values
+	 *        The values to compare with.
+	 * @return The Dbtool object, for chaining purposes.
+	 */
+	public Dbtool whereIn(String field, Object[] values)
+	{
+		if (hasActionUnit())
+		{
+			getLatestActionUnit().whereIn(field, values);
+		}
+		return this;
+	}
+
+	public Dbtool whereArgs(String[] whereArgs)
 	{
 		if (hasActionUnit())
 		{
@@ -1077,7 +1532,7 @@ public class Dbtool implements IDbtoolAction
 		setDb(dbName);
 		initializeDbHelper(_dbName);
 
-		_db = _dbHelper.getWritableDatabase();
+		replaceDb(_dbHelper.getWritableDatabase());
 		return _db;
 	}
 
@@ -1090,7 +1545,7 @@ public class Dbtool implements IDbtoolAction
 			_dbHelper.setActionOnCreate(actionOnCreate);
 			try
 			{
-				_db = _dbHelper.getWritableDatabase();
+				replaceDb(_dbHelper.getWritableDatabase());
 			}
 			catch (SQLiteException e)
 			{
@@ -1134,7 +1589,7 @@ public class Dbtool implements IDbtoolAction
 				}
 			}
 
-			_db = _dbHelper.getWritableDatabase();
+			replaceDb(_dbHelper.getWritableDatabase());
 			return _db;
 		}
 		else
@@ -1143,6 +1598,61 @@ public class Dbtool implements IDbtoolAction
 		}
 	}
 
+	/**
+	 * Sets the connection settings of a database, applied when it is next
+	 * opened. The per-connection PRAGMAs reach the primary connection and the
+	 * read pool's connections, not the extra connections Android opens in WAL
+	 * mode (see DbConfig).
+	 * 
+	 * @param dbName
+	 *        The name of the database.
+	 * @param config
+	 *        The DbConfig, or null for the default settings.
+	 * @return The Dbtool instance.
+	 */
+	public Dbtool setDbConfig(String dbName, DbConfig config)
+	{
+		if (config == null)
+		{
+			_dbConfigs.remove(dbName);
+		}
+		else
+		{
+			_dbConfigs.put(dbName, config);
+		}
+		return this;
+	}
+
+	/**
+	 * Gets the connection settings of a database.
+	 * 
+	 * @param dbName
+	 *        The name of the database.
+	 * @return The DbConfig, or null if the database uses the default
+	 *         settings.
+	 */
+	public DbConfig getDbConfig(String dbName)
+	{
+		return _dbConfigs.get(dbName);
+	}
+
+	/**
+	 * Creates an sqlite database with the name supplied, with the given
+	 * connection settings. Used thus:
+	 * <b>dbtool.createDb(dbName, DbConfig.throughput());</b>.
+	 * 
+	 * @param dbName
+	 *        The name of the database.
+	 * @param config
+	 *        The connection settings of the database.
+	 * @return The SQLiteDatabase object.
+	 */
+	public SQLiteDatabase createDb(String dbName, DbConfig config)
+	{
+		setDbConfig(dbName, config);
+		return createOrOpenDatabase(dbName);
+	}
+
 	/**
 	 * Create an sqlite database with the name supplied.
 	 * 
@@ -1278,11 +1788,80 @@ public class Dbtool implements IDbtoolAction
 		return createOrOpenDatabase(dbName);
 	}
 
+	/**
+	 * Opens a database with the given connection settings. If the database is
+	 * already open with other settings, it is closed and opened again, as
+	 * the settings are applied when a connection is opened.
+	 * 
+	 * @param dbName
+	 *        The database name.
+	 * @param config
+	 *        The connection settings of the database.
+	 * @return
+	 */
+	public SQLiteDatabase openDb(String dbName, DbConfig config)
+	{
+		if (config != getDbConfig(dbName))
+		{
+			setDbConfig(dbName, config);
+			if (_db != null && dbName.equals(getDbName(_db)))
+			{
+				closeDb();
+			}
+		}
+		return openDb(dbName);
+	}
+
 	public static SQLiteDatabase openDb(SQLiteDatabase db)
 	{
 		return SQLiteDatabase.openDatabase(db.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
 	}
 
+	/**
+	 * Opens the database of this Dbtool instance if it is not open, and holds
+	 * it open until the matching releaseDb() call. Used instead of an
+	 * openDb()/closeDb() pair around an operation:
+	 * <p>
+	 * <b>dbtool.acquireDb();<br/>
+	 * try { ... } finally { dbtool.releaseDb(); }</b>
+	 * <p>
+	 * Calls are counted, so nested and back-to-back operations share the
+	 * same open database. If acquireDb() opened it, it is closed once the
+	 * idle timeout passes with no acquireDb() call outstanding (see
+	 * setIdleTimeout(long)); a database opened with openDb() stays open until
+	 * closeDb() is called.
+	 * 
+	 * @return The open SQLiteDatabase.
+	 */
+	public SQLiteDatabase acquireDb()
+	{
+		return _connection.acquire();
+	}
+
+	/**
+	 * Releases the database held open by an acquireDb() call.
+	 */
+	public void releaseDb()
+	{
+		_connection.release();
+	}
+
+	/**
+	 * Sets how long the database stays open after the last acquireDb() call
+	 * is released. The default is 30 seconds.
+	 * 
+	 * @param millis
+	 *        The timeout in milliseconds. 0 closes the database as soon as
+	 *        it is released; a negative value keeps it open until closeDb()
+	 *        is called.
+	 * @return The Dbtool instance.
+	 */
+	public Dbtool setIdleTimeout(long millis)
+	{
+		_connection.setIdleTimeout(millis);
+		return this;
+	}
+
 	/**
 	 * Closes the current database associated with this Dbtool instance.
 	 */
@@ -1293,8 +1872,18 @@ public class Dbtool implements IDbtoolAction
 		 */
 		try
 		{
+			// Whatever acquireDb() references are held no longer keep this connection open.
+			_connection.reset();
+			closeWriteScheduler();
+			closeReadPool();
+			clearResultCache();
+			invalidateSchemaCatalog();
 			if (_db != null && _db.isOpen())
 			{
+				if (_statementCache != null)
+				{
+					_statementCache.clear();
+				}
 				_db.close();
 				//_dbHelper.close();
 			}
@@ -1341,6 +1930,14 @@ public class Dbtool implements IDbtoolAction
 	 */
 	public boolean dropDb(String dbName)
 	{
+		if (_dbName != null && _dbName.equals(dbName))
+		{
+			// Close the database even if it is held by acquireDb() calls.
+			_connection.closeNow();
+			_dbHelper = null;
+			_schemaGeneration++;
+		}
+
 		if (_context != null)
 		{
 			try
@@ -1467,82 +2064,1076 @@ public class Dbtool implements IDbtoolAction
 	{
 		if (hasActionUnit())
 		{
-			return popActionUnit().run();
+			countStatement();
+			DbtoolActionUnit unit = popActionUnit();
+			WriteScheduler scheduler = getWriteScheduler(unit);
+			if (scheduler != null)
+			{
+				return awaitWrite(scheduler.submit(unit));
+			}
+			return runUnit(unit);
 		}
 		return null;
 	}
 
+	Object runUnit(DbtoolActionUnit unit)
+	{
+		ResultCache cache = _resultCache;
+		if (cache != null && unit.isSelect() && _transactionScope.get().depth == 0
+			&& !(_db != null && _db.inTransaction()))
+		{
+			// Within a transaction, reads must see its uncommitted writes, so they skip the cache.
+			String key = unit.getResultCacheKey();
+			if (key != null)
+			{
+				ResultCache.Entry entry = cache.get(key);
+				if (entry != null)
+				{
+					return entry.value;
+				}
+				long generation = cache.getGeneration();
+				Set<String> tables = unit.getTables();
+				Object result = runUnitOnConnection(unit);
+				/*
+				 * Without the tables actually read, e.g. for a FROM (SELECT ...)
+				 * or a view, no write would invalidate the result. A null result
+				 * may be a failed query.
+				 */
+				if (result != null && tablesKnown(tables))
+				{
+					cache.put(key, result, tables, generation);
+				}
+				return result;
+			}
+		}
+		return runUnitOnConnection(unit);
+	}
+
 	/**
-	 * Executes a query with sqliteDb.execSQL(...)
+	 * Checks whether the tables parsed from a query are all the tables it
+	 * reads, so that writes to them are the only ones that change its result.
+	 * They are not when none were parsed, or when one of them is a view,
+	 * whose base tables are not known.
+	 */
+	private boolean tablesKnown(Set<String> tables)
+	{
+		if (tables.isEmpty())
+		{
+			return false;
+		}
+		SchemaCatalog catalog = getSchemaCatalog();
+		if (catalog == null)
+		{
+			return false;
+		}
+		for (String table : tables)
+		{
+			SchemaCatalog.Table t = catalog.getTable(table);
+			if (t != null && t.isView())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Object runUnitOnConnection(DbtoolActionUnit unit)
+	{
+		ReadConnectionPool.Reader reader = borrowReader(unit, !unit.isGettingCursor());
+		try
+		{
+			Object result = unit.run();
+			if (!unit.isSelect())
+			{
+				tablesWritten(unit.getTables(), result);
+			}
+			return result;
+		}
+		finally
+		{
+			releaseReader(reader);
+		}
+	}
+
+	/**
+	 * Runs the active query on another thread, and returns at once. The
+	 * result is what run() would return, typed by the caller:
+	 * <b>Future&lt;Long&gt; f = dbtool.insertInto(table).record(row).runAsync();</b>
+	 * gets the row id of an insert, a Future&lt;Integer&gt; the number of
+	 * rows of an update or delete, and a Future&lt;DbRecordSet&gt; (or
+	 * Future&lt;Cursor&gt;) the result of a 'select' query.
+	 * <p>
+	 * 'select' queries run on the read executor, so many can run at once
+	 * (on the read pool, if enabled), and writes on the write executor, one
+	 * at a time: see setAsyncExecutors(...). With the write scheduler
+	 * enabled, writes are queued to it instead. The database must stay open
+	 * until the Future is done.
 	 * 
-	 * @param sql
-	 *        The query to execute.
+	 * @return The Future of the result.
+	 * @throws IllegalStateException
+	 *         If called within a transaction of the calling thread, as the
+	 *         query would not run in it.
 	 */
-	public void exec(String sql)
+	public <T> Future<T> runAsync()
 	{
-		if (_db == null)
-			throw new NoDatabaseForDbtoolException();
-		_db.execSQL(sql);
+		if (!hasActionUnit())
+		{
+			throw new IllegalStateException("No query to run.");
+		}
+		DbtoolActionUnit unit = popActionUnit();
+		if (unit.isSelect())
+		{
+			return runAsync(unit, getReadExecutor());
+		}
+
+		WriteScheduler scheduler = getWriteScheduler(unit);
+		if (scheduler != null)
+		{
+			@SuppressWarnings("unchecked")
+			Future<T> future = (Future<T>) scheduler.submit(unit);
+			return future;
+		}
+		return runAsync(unit, getWriteExecutor());
 	}
 
 	/**
-	 * Initializes this instance's DbHelper.
+	 * Runs the active query on the given executor, and returns at once. See
+	 * runAsync().
 	 * 
-	 * @param dbName
-	 *        The name of the database.
+	 * @param executor
+	 *        The executor to run the query on.
+	 * @return The Future of the result.
 	 */
-	private void initializeDbHelper(String dbName)
+	public <T> Future<T> runAsync(ExecutorService executor)
+	{
+		if (!hasActionUnit())
+		{
+			throw new IllegalStateException("No query to run.");
+		}
+		return runAsync(popActionUnit(), executor);
+	}
+
+	private <T> Future<T> runAsync(final DbtoolActionUnit unit, ExecutorService executor)
 	{
-		_dbHelper = new DbHelper(dbName);
+		if (_transactionScope.get().depth > 0 || (_db != null && _db.inTransaction()))
+		{
+			throw new IllegalStateException("runAsync() cannot be called within a transaction.");
+		}
+
+		return executor.submit(new Callable<T>()
+		{
+			@SuppressWarnings("unchecked")
+			@Override
+			public T call()
+			{
+				return (T) runUnit(unit);
+			}
+		});
 	}
 
 	/**
-	 * Helper class to facilitate working with an SQLite database.
+	 * Sets the executors of runAsync(). By default, 'select' queries run on a
+	 * pool of threads sized to the processors and writes on a single thread,
+	 * shared by all Dbtool instances. Any ExecutorService can be set, such as
+	 * Executors.newVirtualThreadPerTaskExecutor() for reads on a Java 21 JVM.
+	 * Keep the write executor to one thread, as SQLite runs one write at a
+	 * time and more threads would only wait on its lock.
+	 * 
+	 * @param readExecutor
+	 *        The executor of 'select' queries, or null for the default.
+	 * @param writeExecutor
+	 *        The executor of writes, or null for the default.
+	 * @return The Dbtool instance.
 	 */
-	private class DbHelper extends SQLiteOpenHelper
+	public Dbtool setAsyncExecutors(ExecutorService readExecutor, ExecutorService writeExecutor)
 	{
-		private Runnable actionOnCreate;
-		private Runnable actionOnUpgrade;
-		private Runnable actionOnOpen;
+		_readExecutor = readExecutor;
+		_writeExecutor = writeExecutor;
+		return this;
+	}
 
-		DbHelper(String dbName)
+	/**
+	 * Enables the write scheduler: inserts, updates and deletes run through
+	 * run() or runAsync() from any thread are queued to one writer thread,
+	 * which commits them in groups of up to batchSize writes, gathered for up
+	 * to batchDelayMillis after the first. Each group shares one transaction,
+	 * and so one journal sync, instead of every write being committed on its
+	 * own. run() waits for the group of its write to be committed, and
+	 * returns its result as before; a write that fails is rolled back alone,
+	 * and its exception is thrown from run().
+	 * <p>
+	 * Writes run within a transaction of the calling thread are not queued,
+	 * and run in that transaction as before.
+	 * 
+	 * @param batchSize
+	 *        The most writes committed in one transaction, or 0 to disable
+	 *        the scheduler.
+	 * @param batchDelayMillis
+	 *        How long the writer waits for more writes after the first of a
+	 *        group. Longer delays make larger groups, at the cost of the
+	 *        latency of each write.
+	 * @return The Dbtool instance.
+	 */
+	public Dbtool enableWriteScheduler(int batchSize, long batchDelayMillis)
+	{
+		closeWriteScheduler();
+		_writeBatchSize = batchSize;
+		_writeBatchDelay = batchDelayMillis;
+		return this;
+	}
+
+	/**
+	 * Enables the write scheduler with the default group size and delay. See
+	 * enableWriteScheduler(int, long).
+	 * 
+	 * @return The Dbtool instance.
+	 */
+	public Dbtool enableWriteScheduler()
+	{
+		return enableWriteScheduler(WriteScheduler.DEFAULT_BATCH_SIZE, WriteScheduler.DEFAULT_BATCH_DELAY);
+	}
+
+	/**
+	 * Disables the write scheduler, after committing the writes queued to
+	 * it.
+	 * 
+	 * @return The Dbtool instance.
+	 */
+	public Dbtool disableWriteScheduler()
+	{
+		return enableWriteScheduler(0, WriteScheduler.DEFAULT_BATCH_DELAY);
+	}
+
+	/**
+	 * Gets the number of transactions committed by the write scheduler, and
+	 * of writes run in them, as {transactions, writes}.
+	 * 
+	 * @return The counts, or null if the scheduler is not running.
+	 */
+	public long[] getWriteSchedulerCounts()
+	{
+		WriteScheduler scheduler = _writeScheduler;
+		if (scheduler == null)
 		{
-			super(_context, dbName, null, _dbVersion);
+			return null;
 		}
+		return new long[] { scheduler.getTransactionCount(), scheduler.getWriteCount() };
+	}
 
-		DbHelper(Context context, String name, CursorFactory factory, int version)
+	/**
+	 * Gets the write scheduler to queue a write to.
+	 * 
+	 * @return The WriteScheduler, or null if the write runs on the calling
+	 *         thread.
+	 */
+	private WriteScheduler getWriteScheduler(DbtoolActionUnit unit)
+	{
+		if (_writeBatchSize == 0 || unit.isSelect())
 		{
-			super(context, name, factory, version);
+			return null;
+		}
+		if (_transactionScope.get().depth > 0 || _db == null || _db.inTransaction())
+		{
+			return null;
 		}
 
-		/**
-		 * Specifies a Runnable action to run on-create of the db.
-		 * 
-		 * @param action
-		 */
-		void setActionOnCreate(Runnable action)
+		synchronized (this)
 		{
-			this.actionOnCreate = action;
+			if (_writeScheduler == null && _writeBatchSize > 0 && _db.isOpen())
+			{
+				_writeScheduler = new WriteScheduler(this, _writeBatchSize, _writeBatchDelay);
+			}
 		}
+		WriteScheduler scheduler = _writeScheduler;
+		return (scheduler == null || scheduler.isWriterThread()) ? null : scheduler;
+	}
 
-		/**
-		 * Specifies a Runnable action to run on-update of the db.
-		 * 
-		 * @param action
-		 */
-		void setActionOnUpdate(Runnable action)
+	private void closeWriteScheduler()
+	{
+		WriteScheduler scheduler;
+		synchronized (this)
 		{
-			this.actionOnUpgrade = action;
+			scheduler = _writeScheduler;
+			_writeScheduler = null;
 		}
+		if (scheduler != null)
+		{
+			scheduler.close();
+		}
+	}
 
-		/**
-		 * Specifies a Runnable action to run on-open of the db.
-		 * 
-		 * @param action
-		 */
-		void setActionOnOpen(Runnable action)
+	/**
+	 * Waits for the result of a queued write.
+	 */
+	private static Object awaitWrite(Future<Object> future)
+	{
+		boolean interrupted = false;
+		try
 		{
-			this.actionOnOpen = action;
+			while (true)
+			{
+				try
+				{
+					return future.get();
+				}
+				catch (InterruptedException ex)
+				{
+					// The write is queued and will be committed: wait for it all the same.
+					interrupted = true;
+				}
+				catch (ExecutionException ex)
+				{
+					if (ex.getCause() instanceof RuntimeException)
+					{
+						throw (RuntimeException) ex.getCause();
+					}
+					throw new RuntimeException(ex.getCause());
+				}
+			}
+		}
+		finally
+		{
+			if (interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private ExecutorService getReadExecutor()
+	{
+		ExecutorService executor = _readExecutor;
+		return executor != null ? executor : AsyncExecutors.getReadExecutor();
+	}
+
+	private ExecutorService getWriteExecutor()
+	{
+		ExecutorService executor = _writeExecutor;
+		return executor != null ? executor : AsyncExecutors.getWriteExecutor();
+	}
+
+	/**
+	 * Runs the active 'select' query and returns an iterator that reads the
+	 * rows from the Cursor one at a time, instead of loading them all into a
+	 * DbRecordSet. Used thus:
+	 * <b>DbRecordIterator it = dbtool.getAll().from(table).iterate();</b>.
+	 * The iterator reuses one DbRecord for every row, and must be closed if
+	 * not read to the end.
+	 * 
+	 * @return The DbRecordIterator.
+	 */
+	public DbRecordIterator iterate()
+	{
+		if (hasActionUnit())
+		{
+			countStatement();
+			return popActionUnit().iterate();
+		}
+		throw new IllegalStateException("No query to iterate.");
+	}
+
+	/**
+	 * Runs the active 'select' query and returns its result stored column by
+	 * column, in primitive arrays, instead of as one DbRecord per row. Used
+	 * thus: <b>dbtool.get(columns).from(table).runColumnar();</b>.
+	 * 
+	 * @return The ColumnarRecordSet. It is empty, not null, when there are no
+	 *         rows.
+	 */
+	public ColumnarRecordSet runColumnar()
+	{
+		if (hasActionUnit())
+		{
+			countStatement();
+			DbtoolActionUnit unit = popActionUnit();
+			ReadConnectionPool.Reader reader = borrowReader(unit, true);
+			try
+			{
+				return unit.runColumnar();
+			}
+			finally
+			{
+				releaseReader(reader);
+			}
+		}
+		throw new IllegalStateException("No query to run.");
+	}
+
+	/**
+	 * Checks whether the active 'select' query matches any row, without
+	 * reading any row data. Used thus:
+	 * <b>dbtool.getAll().from(table).whereEquals(column, value).exists();</b>.
+	 * 
+	 * @return <b>true</b> if a row matches; <b>false</b> otherwise.
+	 */
+	public boolean exists()
+	{
+		if (hasActionUnit())
+		{
+			countStatement();
+			DbtoolActionUnit unit = popActionUnit();
+			ReadConnectionPool.Reader reader = borrowReader(unit, true);
+			try
+			{
+				return unit.exists();
+			}
+			finally
+			{
+				releaseReader(reader);
+			}
+		}
+		throw new IllegalStateException("No query to run.");
+	}
+
+	/**
+	 * Counts the rows matched by the active 'select' query, without reading
+	 * any row data. Used thus:
+	 * <b>dbtool.getAll().from(table).whereEquals(column, value).count();</b>.
+	 * 
+	 * @return The number of rows.
+	 */
+	public long count()
+	{
+		if (hasActionUnit())
+		{
+			countStatement();
+			DbtoolActionUnit unit = popActionUnit();
+			ReadConnectionPool.Reader reader = borrowReader(unit, true);
+			try
+			{
+				return unit.count();
+			}
+			finally
+			{
+				releaseReader(reader);
+			}
+		}
+		throw new IllegalStateException("No query to run.");
+	}
+
+	/**
+	 * Runs the active 'select' query and returns its result as views over
+	 * the Cursor, which decode each field only when it is read. Used thus:
+	 * <b>dbtool.get(columns).from(table).runView();</b>. Close the returned
+	 * set when done with it.
+	 * 
+	 * @return The CursorRecordSet. It is empty, not null, when there are no
+	 *         rows.
+	 */
+	public CursorRecordSet runView()
+	{
+		if (hasActionUnit())
+		{
+			countStatement();
+			return popActionUnit().runView();
+		}
+		throw new IllegalStateException("No query to run.");
+	}
+
+	/**
+	 * Compiles the active query into a PreparedQuery instead of running it. The PreparedQuery can then be run many
+	 * times with different bind values, without rebuilding the query. Used thus:
+	 * <b>dbtool.get(columns).from(table).whereEquals(column, value).prepare();</b>.
+	 * 
+	 * @return The PreparedQuery.
+	 */
+	public PreparedQuery prepare()
+	{
+		if (hasActionUnit())
+		{
+			return popActionUnit().prepare(this);
+		}
+		throw new IllegalStateException("No query to prepare.");
+	}
+
+	/**
+	 * Executes a query with sqliteDb.execSQL(...)
+	 * 
+	 * @param sql
+	 *        The query to execute.
+	 */
+	public void exec(String sql)
+	{
+		if (_db == null)
+			throw new NoDatabaseForDbtoolException();
+		countStatement();
+		_db.execSQL(sql);
+		if (isDdl(sql))
+		{
+			_schemaGeneration++;
+			invalidateSchemaCatalog();
+			// Should the transaction be rolled back, the schema read meanwhile would be wrong.
+			TransactionScope scope = _transactionScope.get();
+			if (scope.depth > 0)
+			{
+				scope.schemaChanged = true;
+			}
+		}
+		tablesWritten(null, null);
+	}
+
+	/**
+	 * Observes the active 'select' query: runs it now, and again each time a
+	 * write through this Dbtool changes a table it reads, and pushes each
+	 * result to the listener. Used thus:
+	 * <b>LiveQuery q = dbtool.get(columns).from(table).observe(listener);</b>.
+	 * Writes that come in a burst are gathered into one refresh. A query with
+	 * a subquery, or on a view, is refreshed on every write, as the tables it
+	 * reads are not all known. Call close() on the LiveQuery to stop observing.
+	 * 
+	 * @param listener
+	 *        The listener of the results.
+	 * @return The LiveQuery.
+	 */
+	public LiveQuery observe(QueryListener listener)
+	{
+		return observe(listener, LiveQuery.DEFAULT_DEBOUNCE);
+	}
+
+	/**
+	 * Observes the active 'select' query. See observe(QueryListener).
+	 * 
+	 * @param listener
+	 *        The listener of the results.
+	 * @param debounceMillis
+	 *        How long a refresh waits after the write that scheduled it, to
+	 *        gather the writes that follow.
+	 * @return The LiveQuery.
+	 */
+	public LiveQuery observe(QueryListener listener, long debounceMillis)
+	{
+		if (!hasActionUnit())
+		{
+			throw new IllegalStateException("No query to observe.");
+		}
+		DbtoolActionUnit unit = popActionUnit();
+		if (!unit.isSelect())
+		{
+			throw new IllegalStateException("Only 'select' queries can be observed.");
+		}
+
+		PreparedQuery query = unit.prepare(this);
+		// The tables of a subquery are not parsed, and neither are those of an expression that starts with one or the
+		// base tables of a view: such a query is refreshed on every write rather than missing the writes to the tables
+		// not seen.
+		Set<String> tables = query.getTables();
+		acquireDb();
+		try
+		{
+			if (!tablesKnown(tables) || InvalidationTracker.hasSubquery(query.getSql()))
+			{
+				tables = null;
+			}
+		}
+		finally
+		{
+			releaseDb();
+		}
+		LiveQuery liveQuery = new LiveQuery(this, _invalidationTracker, query, tables, listener, debounceMillis);
+		_invalidationTracker.add(liveQuery);
+		liveQuery.refresh();
+		return liveQuery;
+	}
+
+	/**
+	 * Invalidates the queries observed on the tables written by a query. Within
+	 * a transaction, the tables are kept until it is committed.
+	 * 
+	 * @param tables
+	 *        The tables written, or null if not known.
+	 * @param result
+	 *        The result of the write, to skip those that changed no row.
+	 */
+	void tablesWritten(Collection<String> tables, Object result)
+	{
+		if (!_invalidationTracker.hasObservers() && _resultCache == null)
+		{
+			return;
+		}
+		if ((result instanceof Integer && (Integer) result == 0) || (result instanceof Long && (Long) result == -1))
+		{
+			return;
+		}
+
+		TransactionScope scope = _transactionScope.get();
+		if (scope.depth > 0)
+		{
+			if (tables == null)
+			{
+				scope.allTablesChanged = true;
+			}
+			else
+			{
+				if (scope.changedTables == null)
+				{
+					scope.changedTables = new HashSet<String>();
+				}
+				scope.changedTables.addAll(tables);
+			}
+			return;
+		}
+
+		ResultCache cache = _resultCache;
+		if (tables == null)
+		{
+			if (cache != null)
+			{
+				cache.clear();
+			}
+			_invalidationTracker.allTablesChanged();
+		}
+		else
+		{
+			if (cache != null)
+			{
+				cache.invalidate(tables);
+			}
+			_invalidationTracker.tablesChanged(tables);
+		}
+	}
+
+	/**
+	 * Enables a cache of the results of 'select' queries run with run(): a
+	 * query run again with the same SQL and bind values gets a copy of the
+	 * cached result, without reading the database, until a write through
+	 * this Dbtool changes one of the tables it reads. Queries that return a
+	 * Cursor, queries with a nested SELECT or on a view (whose tables are
+	 * not tracked), queries run within a transaction, and null results are
+	 * not cached.
+	 * <p>
+	 * Only the tables named by a write are seen to change: rows changed by
+	 * its triggers or by ON DELETE/ON UPDATE CASCADE in other tables are not,
+	 * and neither are writes made by other means than this Dbtool. Do not
+	 * enable the cache for tables changed that way.
+	 * 
+	 * @param maxEntries
+	 *        The most results to cache.
+	 * @param maxBytes
+	 *        The most memory the cached results may take, as estimated from
+	 *        their values.
+	 * @return The Dbtool instance.
+	 */
+	public Dbtool enableResultCache(int maxEntries, long maxBytes)
+	{
+		_resultCache = new ResultCache(maxEntries, maxBytes);
+		return this;
+	}
+
+	/**
+	 * Enables the result cache with the default bounds. See
+	 * enableResultCache(int, long).
+	 * 
+	 * @return The Dbtool instance.
+	 */
+	public Dbtool enableResultCache()
+	{
+		return enableResultCache(ResultCache.DEFAULT_MAX_ENTRIES, ResultCache.DEFAULT_MAX_BYTES);
+	}
+
+	public Dbtool disableResultCache()
+	{
+		_resultCache = null;
+		return this;
+	}
+
+	/**
+	 * Gets the result cache, to read its metrics.
+	 * 
+	 * @return The ResultCache, or null if it is not enabled.
+	 */
+	public ResultCache getResultCache()
+	{
+		return _resultCache;
+	}
+
+	private void clearResultCache()
+	{
+		ResultCache cache = _resultCache;
+		if (cache != null)
+		{
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Enables a pool of read-only connections to the database. 'select'
+	 * queries whose result is read before run() (or runColumnar(), exists(),
+	 * count()) returns then run on a reader borrowed from the pool, while
+	 * writes and Cursor results stay on the writable connection. Queries run
+	 * within inTransaction(...), or within any transaction of the calling
+	 * thread, also stay on the writable connection, so they see its
+	 * uncommitted writes.
+	 * <p>
+	 * Readers only run alongside the writer with a WAL journal: see
+	 * DbConfig.journalMode(...).
+	 * 
+	 * @param size
+	 *        The most readers to open, or 0 to disable the pool.
+	 * @param borrowTimeoutMillis
+	 *        How long a query waits for a reader when all are in use, before
+	 *        failing with ReadPoolTimeoutException.
+	 * @return The Dbtool instance.
+	 */
+	public synchronized Dbtool enableReadPool(int size, long borrowTimeoutMillis)
+	{
+		closeReadPool();
+		_readPoolSize = size;
+		_readPoolBorrowTimeout = borrowTimeoutMillis;
+		return this;
+	}
+
+	/**
+	 * Gets the pool of read-only connections, to read its metrics.
+	 * 
+	 * @return The ReadConnectionPool, or null if it is not enabled or the
+	 *         database is not open.
+	 */
+	public synchronized ReadConnectionPool getReadPool()
+	{
+		if (_readPool == null && _readPoolSize > 0 && _db != null && _db.isOpen()
+			&& !":memory:".equals(_db.getPath()))
+		{
+			_readPool = new ReadConnectionPool(_db.getPath(), getDbConfig(getDbName()), _readPoolSize,
+				_readPoolBorrowTimeout);
+		}
+		return _readPool;
+	}
+
+	private synchronized void closeReadPool()
+	{
+		if (_readPool != null)
+		{
+			_readPool.close();
+			_readPool = null;
+		}
+	}
+
+	/**
+	 * Borrows a reader for a query, if the read pool is enabled and the query
+	 * can run on one.
+	 * 
+	 * @return The reader, or null if the query runs on the writable
+	 *         connection.
+	 */
+	private ReadConnectionPool.Reader borrowReader(DbtoolActionUnit unit, boolean materialized)
+	{
+		if (_readPoolSize == 0 || !materialized || !unit.isSelect())
+		{
+			return null;
+		}
+		if (_transactionScope.get().depth > 0 || _db == null || _db.inTransaction())
+		{
+			return null;
+		}
+
+		ReadConnectionPool pool = getReadPool();
+		if (pool == null)
+		{
+			return null;
+		}
+		ReadConnectionPool.Reader reader = pool.borrow();
+		unit.useConnection(reader.db, reader.statementCache);
+		return reader;
+	}
+
+	private void releaseReader(ReadConnectionPool.Reader reader)
+	{
+		if (reader != null)
+		{
+			// Back to the pool that lent it, which may have been closed or replaced since.
+			reader.pool.release(reader);
+		}
+	}
+
+	/**
+	 * The transaction state of one thread.
+	 */
+	private static class TransactionScope
+	{
+		int depth;
+		int statementCount;
+		HashSet<String> changedTables;
+		boolean allTablesChanged;
+		boolean schemaChanged;
+	}
+
+	/**
+	 * Runs work in a transaction, which is committed if the work returns
+	 * normally and rolled back if it throws. Used thus:
+	 * <p>
+	 * <b>dbtool.inTransaction(new TransactionWork() {<br/>
+	 * &nbsp;&nbsp;public void run(Dbtool dbtool) {<br/>
+	 * &nbsp;&nbsp;&nbsp;&nbsp;dbtool.insertInto(table).record(row).run();<br/>
+	 * &nbsp;&nbsp;&nbsp;&nbsp;dbtool.update(table).set(column, value).whereEquals("id", id).run();<br/>
+	 * &nbsp;&nbsp;}<br/>
+	 * });</b>
+	 * <p>
+	 * The writes are committed together, with one journal sync instead of
+	 * one per query. Calls nested within the work of another call on the same
+	 * thread run in a SAVEPOINT: an inner failure rolls back only the inner
+	 * work, and is thrown on to the outer work, which may catch it and go on.
+	 * The outermost transaction begins in IMMEDIATE mode.
+	 * 
+	 * @param work
+	 *        The work to run.
+	 * @return The number of queries run within the transaction, including
+	 *         those of nested transactions.
+	 * @throws DbtoolTransactionException
+	 *         If the work throws a checked exception, or if the transaction
+	 *         was rolled back rather than committed because a transaction
+	 *         begun within it with SQLiteDatabase.beginTransaction() failed.
+	 *         Runtime exceptions thrown by the work are rethrown as they are.
+	 */
+	public int inTransaction(TransactionWork work)
+	{
+		return inTransaction(work, TransactionMode.IMMEDIATE);
+	}
+
+	/**
+	 * Runs work in a transaction, which is committed if the work returns
+	 * normally and rolled back if it throws. See
+	 * inTransaction(TransactionWork).
+	 * 
+	 * @param work
+	 *        The work to run.
+	 * @param mode
+	 *        How the outermost transaction locks the database. Ignored for a
+	 *        nested call, which runs in a SAVEPOINT of the outer transaction.
+	 * @return The number of queries run within the transaction, including
+	 *         those of nested transactions.
+	 */
+	public int inTransaction(TransactionWork work, TransactionMode mode)
+	{
+		if (_db == null)
+			throw new NoDatabaseForDbtoolException();
+
+		SQLiteDatabase db = _db;
+		TransactionScope scope = _transactionScope.get();
+		boolean outermost = scope.depth == 0;
+		String savepoint = "dbtool_savepoint_" + scope.depth;
+		int startCount = scope.statementCount;
+
+		TransactionOutcome outcome = null;
+		if (outermost)
+		{
+			outcome = new TransactionOutcome();
+			if (mode == TransactionMode.EXCLUSIVE)
+			{
+				db.beginTransactionWithListener(outcome);
+			}
+			else
+			{
+				db.beginTransactionWithListenerNonExclusive(outcome);
+			}
+		}
+		else
+		{
+			db.execSQL("SAVEPOINT " + savepoint);
+		}
+		scope.depth++;
+
+		boolean successful = false;
+		boolean rolledBack = false;
+		int count = 0;
+		try
+		{
+			work.run(this);
+			successful = true;
+		}
+		catch (RuntimeException ex)
+		{
+			throw ex;
+		}
+		catch (Exception ex)
+		{
+			throw new DbtoolTransactionException(ex);
+		}
+		finally
+		{
+			scope.depth--;
+			count = scope.statementCount - startCount;
+			if (outermost)
+			{
+				HashSet<String> changedTables = scope.changedTables;
+				boolean allTablesChanged = scope.allTablesChanged;
+				boolean schemaChanged = scope.schemaChanged;
+				scope.changedTables = null;
+				scope.allTablesChanged = false;
+				scope.schemaChanged = false;
+				try
+				{
+					if (successful)
+					{
+						db.setTransactionSuccessful();
+					}
+					db.endTransaction();
+				}
+				finally
+				{
+					scope.statementCount = 0;
+					if (schemaChanged)
+					{
+						invalidateSchemaCatalog();
+					}
+				}
+
+				// A nested beginTransaction() that failed makes endTransaction() roll back instead of committing.
+				rolledBack = successful && !outcome.committed;
+				if (successful && !rolledBack && (allTablesChanged || changedTables != null))
+				{
+					tablesWritten(allTablesChanged ? null : changedTables, null);
+				}
+			}
+			else
+			{
+				if (!successful)
+				{
+					/*
+					 * The leading ';' keeps Android (API 16-27) from taking the statement
+					 * for a plain ROLLBACK, which would end the outer transaction.
+					 */
+					db.execSQL(";ROLLBACK TO " + savepoint);
+				}
+				db.execSQL("RELEASE " + savepoint);
+			}
+		}
+		if (rolledBack)
+		{
+			throw new DbtoolTransactionException("The transaction was rolled back, as a nested transaction failed.");
+		}
+		return count;
+	}
+
+	/**
+	 * Records whether the outermost transaction was committed or rolled back by endTransaction().
+	 */
+	private static final class TransactionOutcome implements SQLiteTransactionListener
+	{
+		boolean committed = false;
+
+		@Override
+		public void onBegin()
+		{}
+
+		@Override
+		public void onCommit()
+		{
+			committed = true;
+		}
+
+		@Override
+		public void onRollback()
+		{
+			committed = false;
+		}
+	}
+
+	/**
+	 * Counts a query run within the transaction of the calling thread, if
+	 * there is one.
+	 */
+	void countStatement()
+	{
+		TransactionScope scope = _transactionScope.get();
+		if (scope.depth > 0)
+		{
+			scope.statementCount++;
+		}
+	}
+
+	/**
+	 * Initializes this instance's DbHelper.
+	 * 
+	 * @param dbName
+	 *        The name of the database.
+	 */
+	private void initializeDbHelper(String dbName)
+	{
+		/*
+		 * Reuse the DbHelper of the same database, so an open database is not
+		 * opened again.
+		 */
+		if (_dbHelper == null || !dbName.equals(_dbHelper.getDatabaseName()))
+		{
+			_dbHelper = new DbHelper(dbName);
+		}
+		else
+		{
+			_dbHelper.setActionOnCreate(null);
+			_dbHelper.setActionOnOpen(null);
+			_dbHelper.setActionOnUpdate(null);
+		}
+		_dbHelper.setConfig(_dbConfigs.get(dbName));
+	}
+
+	/**
+	 * Helper class to facilitate working with an SQLite database.
+	 */
+	private class DbHelper extends SQLiteOpenHelper
+	{
+		private Runnable actionOnCreate;
+		private Runnable actionOnUpgrade;
+		private Runnable actionOnOpen;
+		private DbConfig config;
+
+		DbHelper(String dbName)
+		{
+			super(_context, dbName, null, _dbVersion);
+		}
+
+		DbHelper(Context context, String name, CursorFactory factory, int version)
+		{
+			super(context, name, factory, version);
+		}
+
+		/**
+		 * Specifies a Runnable action to run on-create of the db.
+		 * 
+		 * @param action
+		 */
+		void setActionOnCreate(Runnable action)
+		{
+			this.actionOnCreate = action;
+		}
+
+		/**
+		 * Specifies a Runnable action to run on-update of the db.
+		 * 
+		 * @param action
+		 */
+		void setActionOnUpdate(Runnable action)
+		{
+			this.actionOnUpgrade = action;
+		}
+
+		/**
+		 * Specifies a Runnable action to run on-open of the db.
+		 * 
+		 * @param action
+		 */
+		void setActionOnOpen(Runnable action)
+		{
+			this.actionOnOpen = action;
+		}
+
+		/**
+		 * Specifies the connection settings applied when a connection is
+		 * configured.
+		 * 
+		 * @param config
+		 */
+		void setConfig(DbConfig config)
+		{
+			this.config = config;
+		}
+
+		@Override
+		public void onConfigure(SQLiteDatabase db)
+		{
+			if (this.config != null)
+			{
+				this.config.apply(db);
+			}
 		}
 
 		@Override
@@ -1,14 +1,23 @@
 package org.ikmich.dbtool;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+
 import org.ikmich.dbtool.query.DeleteQuery;
 import org.ikmich.dbtool.query.InsertQuery;
 import org.ikmich.dbtool.query.QueryType;
 import org.ikmich.dbtool.query.SelectQuery;
+import org.ikmich.dbtool.query.StatementCache;
 import org.ikmich.dbtool.query.UpdateQuery;
+import org.ikmich.dbtool.query.UpsertQuery;
+import org.ikmich.dbtool.table.SchemaCatalog;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
 
 /**
  * The actual execution unit for a single query defined in the Dbtool instance. This class is used internally by the
@@ -19,6 +28,8 @@ import android.database.sqlite.SQLiteDatabase;
 class DbtoolActionUnit implements IDbtoolAction
 {
 	private SQLiteDatabase _db;
+	private StatementCache _statementCache;
+	private SchemaCatalog _schemaCatalog;
 
 	private String[] _columns = null;
 	private String _table = null;
@@ -38,15 +49,20 @@ class DbtoolActionUnit implements IDbtoolAction
 	private boolean gettingSingleValue = false;
 	private boolean gettingCursor = false;
 
-	private String singleValueType = ""; // string | integer | float
+	private String singleValueType = ""; // string | integer | long | float | double | blob | boolean
 	static final String SINGLE_VALUE_TYPE_STRING = "string";
 	static final String SINGLE_VALUE_TYPE_INT = "integer";
+	static final String SINGLE_VALUE_TYPE_LONG = "long";
 	static final String SINGLE_VALUE_TYPE_FLOAT = "float";
 	static final String SINGLE_VALUE_TYPE_DOUBLE = "double";
+	static final String SINGLE_VALUE_TYPE_BLOB = "blob";
+	static final String SINGLE_VALUE_TYPE_BOOLEAN = "boolean";
 
-	DbtoolActionUnit(SQLiteDatabase db)
+	DbtoolActionUnit(Dbtool dbtool)
 	{
-		_db = db;
+		_db = dbtool.getActiveDb();
+		_statementCache = dbtool.getStatementCache();
+		_schemaCatalog = dbtool.getSchemaCatalog();
 		_table = "";
 		action = "";
 	}
@@ -56,6 +72,68 @@ class DbtoolActionUnit implements IDbtoolAction
 		return action;
 	}
 
+	/**
+	 * Checks whether this is a 'select' query.
+	 */
+	boolean isSelect()
+	{
+		return this.action == ACTION_SELECT;
+	}
+
+	/**
+	 * Gets the names of the tables the query reads or writes, in lower case: those named in its FROM (or INSERT
+	 * INTO, UPDATE, DELETE FROM) expression. The tables of a subquery, the base tables of a view, and the tables
+	 * written by triggers or foreign key actions are not among them.
+	 */
+	HashSet<String> getTables()
+	{
+		return InvalidationTracker.parseTables(_table);
+	}
+
+	/**
+	 * Gets the key of the result of the query in a ResultCache.
+	 * 
+	 * @return The key, or null if the result cannot be cached: the query is not a 'select' query, returns a Cursor,
+	 *         or reads tables that getTables() does not see, through a nested SELECT.
+	 */
+	String getResultCacheKey()
+	{
+		if (!isSelect() || gettingCursor)
+		{
+			return null;
+		}
+		ArrayList<Object> bindArgs = new ArrayList<Object>();
+		String sql = selectQuery.compile(bindArgs);
+		if (InvalidationTracker.hasSubquery(sql))
+		{
+			return null;
+		}
+		return ResultCache.key(sql, bindArgs, gettingSingleValue ? singleValueType : "rows");
+	}
+
+	/**
+	 * Checks whether run() returns a Cursor, which stays tied to the connection the query ran on.
+	 */
+	boolean isGettingCursor()
+	{
+		return this.gettingCursor;
+	}
+
+	/**
+	 * Makes a 'select' query run on another connection, e.g. a reader borrowed from a ReadConnectionPool.
+	 * 
+	 * @param db
+	 *        The connection.
+	 * @param statementCache
+	 *        The statement cache of the connection.
+	 */
+	void useConnection(SQLiteDatabase db, StatementCache statementCache)
+	{
+		initQuery(QueryType.SELECT);
+		selectQuery.database(db);
+		selectQuery.statementCache(statementCache);
+	}
+
 	private void initQuery(QueryType queryType)
 	{
 		switch (queryType)
@@ -64,24 +142,30 @@ class DbtoolActionUnit implements IDbtoolAction
 				if (this.deleteQuery == null)
 				{
 					this.deleteQuery = new DeleteQuery(_db);
+					this.deleteQuery.statementCache(_statementCache);
 				}
 				break;
 			case SELECT:
 				if (this.selectQuery == null)
 				{
 					this.selectQuery = new SelectQuery(_db);
+					this.selectQuery.statementCache(_statementCache);
 				}
 				break;
 			case UPDATE:
 				if (this.updateQuery == null)
 				{
 					this.updateQuery = new UpdateQuery(_db);
+					this.updateQuery.statementCache(_statementCache);
+					this.updateQuery.schemaCatalog(_schemaCatalog);
 				}
 				break;
 			case INSERT:
 				if (this.insertQuery == null)
 				{
 					this.insertQuery = new InsertQuery(_db);
+					this.insertQuery.statementCache(_statementCache);
+					this.insertQuery.schemaCatalog(_schemaCatalog);
 				}
 				break;
 		}
@@ -289,6 +373,51 @@ class DbtoolActionUnit implements IDbtoolAction
 		return this;
 	}
 
+	public DbtoolActionUnit getLong(String column)
+	{
+		setGettingCursor(false);
+		setGettingSingleValue(true);
+		singleValueType = SINGLE_VALUE_TYPE_LONG;
+
+		prepForSelect();
+		_columns = new String[] {
+			column
+		};
+		selectQuery.columns(_columns);
+
+		return this;
+	}
+
+	public DbtoolActionUnit getBlob(String column)
+	{
+		setGettingCursor(false);
+		setGettingSingleValue(true);
+		singleValueType = SINGLE_VALUE_TYPE_BLOB;
+
+		prepForSelect();
+		_columns = new String[] {
+			column
+		};
+		selectQuery.columns(_columns);
+
+		return this;
+	}
+
+	public DbtoolActionUnit getBoolean(String column)
+	{
+		setGettingCursor(false);
+		setGettingSingleValue(true);
+		singleValueType = SINGLE_VALUE_TYPE_BOOLEAN;
+
+		prepForSelect();
+		_columns = new String[] {
+			column
+		};
+		selectQuery.columns(_columns);
+
+		return this;
+	}
+
 	public DbtoolActionUnit from(String table)
 	{
 		_table = table;
@@ -382,6 +511,57 @@ class DbtoolActionUnit implements IDbtoolAction
 		return this;
 	}
 
+	public DbtoolActionUnit upsertInto(String table)
+	{
+		setAction(QueryType.INSERT);
+		if (!(this.insertQuery instanceof UpsertQuery))
+		{
+			this.insertQuery = new UpsertQuery(_db);
+			this.insertQuery.statementCache(_statementCache);
+			this.insertQuery.schemaCatalog(_schemaCatalog);
+		}
+
+		_table = table;
+		insertQuery.table(_table);
+
+		return this;
+	}
+
+	private UpsertQuery getUpsertQuery()
+	{
+		if (!(this.insertQuery instanceof UpsertQuery))
+		{
+			throw new IllegalStateException("Not an upsert. Start the query with upsertInto(table).");
+		}
+		return (UpsertQuery) this.insertQuery;
+	}
+
+	public DbtoolActionUnit onConflict(String... columns)
+	{
+		getUpsertQuery().onConflict(columns);
+		return this;
+	}
+
+	public DbtoolActionUnit doUpdate(String... columns)
+	{
+		getUpsertQuery().doUpdate(columns);
+		return this;
+	}
+
+	public DbtoolActionUnit doNothing()
+	{
+		getUpsertQuery().doNothing();
+		return this;
+	}
+
+	public DbtoolActionUnit conflictAlgorithm(int conflictAlgorithm)
+	{
+		initQuery(QueryType.INSERT);
+		insertQuery.conflictAlgorithm(conflictAlgorithm);
+
+		return this;
+	}
+
 	public DbtoolActionUnit values(ContentValues values)
 	{
 		initQuery(QueryType.UPDATE);
@@ -412,6 +592,22 @@ class DbtoolActionUnit implements IDbtoolAction
 		return this;
 	}
 
+	public DbtoolActionUnit batchSize(int batchSize)
+	{
+		initQuery(QueryType.INSERT);
+		insertQuery.batchSize(batchSize);
+
+		return this;
+	}
+
+	public DbtoolActionUnit multiRowValues(boolean multiRowValues)
+	{
+		initQuery(QueryType.INSERT);
+		insertQuery.multiRowValues(multiRowValues);
+
+		return this;
+	}
+
 	public DbtoolActionUnit set(String name, Object value)
 	{
 		initQuery(QueryType.UPDATE);
@@ -615,6 +811,60 @@ class DbtoolActionUnit implements IDbtoolAction
 		return this;
 	}
 
+	public DbtoolActionUnit not()
+	{
+		if (isAction(QueryType.SELECT))
+		{
+			selectQuery.not();
+		}
+		else if (isAction(QueryType.UPDATE))
+		{
+			updateQuery.not();
+		}
+		else if (isAction(QueryType.DELETE))
+		{
+			deleteQuery.not();
+		}
+
+		return this;
+	}
+
+	public DbtoolActionUnit beginGroup()
+	{
+		if (isAction(QueryType.SELECT))
+		{
+			selectQuery.beginGroup();
+		}
+		else if (isAction(QueryType.UPDATE))
+		{
+			updateQuery.beginGroup();
+		}
+		else if (isAction(QueryType.DELETE))
+		{
+			deleteQuery.beginGroup();
+		}
+
+		return this;
+	}
+
+	public DbtoolActionUnit endGroup()
+	{
+		if (isAction(QueryType.SELECT))
+		{
+			selectQuery.endGroup();
+		}
+		else if (isAction(QueryType.UPDATE))
+		{
+			updateQuery.endGroup();
+		}
+		else if (isAction(QueryType.DELETE))
+		{
+			deleteQuery.endGroup();
+		}
+
+		return this;
+	}
+
 	public DbtoolActionUnit whereLike(String field, Object value)
 	{
 		if (isAction(QueryType.SELECT))
@@ -635,104 +885,127 @@ class DbtoolActionUnit implements IDbtoolAction
 
 	public DbtoolActionUnit whereEquals(String field, Object value)
 	{
-		//String whereClause;
-
-		if (value == null)
+		if (isAction(QueryType.SELECT))
 		{
-			_whereClause = field + " is null";
+			selectQuery.whereEquals(field, value);
 		}
-		else if (value instanceof String)
+		else if (isAction(QueryType.UPDATE))
 		{
-			_whereClause = field + "='" + value + "'";
+			updateQuery.whereEquals(field, value);
 		}
-		else
+		else if (isAction(QueryType.DELETE))
 		{
-			_whereClause = field + "=" + value;
+			deleteQuery.whereEquals(field, value);
 		}
 
-		//this._whereClause = whereClause;
-		this.where(_whereClause);
-
 		return this;
 	}
 
 	public DbtoolActionUnit whereNotEquals(String field, Object value)
 	{
-		if (value == null)
+		if (isAction(QueryType.SELECT))
 		{
-			_whereClause = field + " is not null";
+			selectQuery.whereNotEquals(field, value);
 		}
-		else if (value instanceof String)
+		else if (isAction(QueryType.UPDATE))
 		{
-			_whereClause = field + " != '" + value + "';";
+			updateQuery.whereNotEquals(field, value);
 		}
-		else
+		else if (isAction(QueryType.DELETE))
 		{
-			_whereClause = field + " != " + value;
+			deleteQuery.whereNotEquals(field, value);
 		}
 
-		this.where(_whereClause);
-
 		return this;
 	}
 
 	public DbtoolActionUnit whereLessThan(String field, Object value)
 	{
-		String whereClause;
-		if (value instanceof String)
+		if (isAction(QueryType.SELECT))
+		{
+			selectQuery.whereLessThan(field, value);
+		}
+		else if (isAction(QueryType.UPDATE))
 		{
-			whereClause = field + "<'" + value + "'";
+			updateQuery.whereLessThan(field, value);
 		}
-		else
+		else if (isAction(QueryType.DELETE))
 		{
-			whereClause = field + "<" + value;
+			deleteQuery.whereLessThan(field, value);
 		}
-		this.where(whereClause);
+
 		return this;
 	}
 
 	public DbtoolActionUnit whereGreaterThan(String field, Object value)
 	{
-		String whereClause;
-		if (value instanceof String)
+		if (isAction(QueryType.SELECT))
 		{
-			whereClause = field + ">'" + value + "'";
+			selectQuery.whereGreaterThan(field, value);
 		}
-		else
+		else if (isAction(QueryType.UPDATE))
 		{
-			whereClause = field + ">" + value;
+			updateQuery.whereGreaterThan(field, value);
 		}
-		this.where(whereClause);
+		else if (isAction(QueryType.DELETE))
+		{
+			deleteQuery.whereGreaterThan(field, value);
+		}
+
 		return this;
 	}
 
 	public DbtoolActionUnit whereGreaterThanOrEquals(String field, Object value)
 	{
-		String whereClause;
-		if (value instanceof String)
+		if (isAction(QueryType.SELECT))
 		{
-			whereClause = field + ">='" + value + "'";
+			selectQuery.whereGreaterThanOrEquals(field, value);
 		}
-		else
+		else if (isAction(QueryType.UPDATE))
 		{
-			whereClause = field + ">=" + value;
+			updateQuery.whereGreaterThanOrEquals(field, value);
 		}
-		this.where(whereClause);
+		else if (isAction(QueryType.DELETE))
+		{
+			deleteQuery.whereGreaterThanOrEquals(field, value);
+		}
+
 		return this;
 	}
 
 	public DbtoolActionUnit whereLessThanOrEquals(String field, Object value)
 	{
-		String whereClause;
-		if (value instanceof String)
+		if (isAction(QueryType.SELECT))
 		{
-			whereClause = field + ">='" + value + "'";
+			selectQuery.whereLessThanOrEquals(field, value);
 		}
-		else
+		else if (isAction(QueryType.UPDATE))
 		{
-			whereClause = field + ">=" + value;
+			updateQuery.whereLessThanOrEquals(field, value);
 		}
-		this.where(whereClause);
+		else if (isAction(QueryType.DELETE))
+		{
+			deleteQuery.whereLessThanOrEquals(field, value);
+		}
+
+		return this;
+	}
+
+	public DbtoolActionUnit whereIn(String field, Object[] values)
+	{
+		if (isAction(QueryType.SELECT))
+		{
+			selectQuery.whereIn(field, values);
+		}
+		else if (isAction(QueryType.UPDATE))
+		{
+			updateQuery.whereIn(field, values);
+		}
+		else if (isAction(QueryType.DELETE))
+		{
+			deleteQuery.whereIn(field, values);
+		}
+
 		return this;
 	}
 
@@ -823,6 +1096,11 @@ class DbtoolActionUnit implements IDbtoolAction
 
 		if (this.action == ACTION_INSERT)
 		{
+			if (insertQuery.isInsertingMultipleRows())
+			{
+				long[] rowIds = insertQuery.runAll();
+				return rowIds;
+			}
 			Long rowId = insertQuery.run();
 			return rowId;
 		}
@@ -833,6 +1111,25 @@ class DbtoolActionUnit implements IDbtoolAction
 			return numRows;
 		}
 
+		if (this.action == ACTION_SELECT && gettingSingleValue && isSimpleQueryType(singleValueType))
+		{
+			/*
+			 * Read the value through a compiled statement, without opening a Cursor.
+			 */
+			try
+			{
+				if (singleValueType == SINGLE_VALUE_TYPE_STRING)
+				{
+					return selectQuery.runForString();
+				}
+				return toSingleValue(selectQuery.runForLong(), singleValueType);
+			}
+			catch (SQLException ex)
+			{
+				return null;
+			}
+		}
+
 		if (this.action == ACTION_SELECT)
 		{
 			Cursor c = null;
@@ -843,72 +1140,19 @@ class DbtoolActionUnit implements IDbtoolAction
 				{
 					return c;
 				}
-				else
+				else if (gettingSingleValue)
 				{
 					/*
 					 * if getting one value, return only that value, instead of a Cursor
 					 */
-					if (gettingSingleValue)
-					{
-						if (c.getColumnCount() == 1)
-						{
-							String columnName = _columns[0];
-							while (c.moveToNext())
-							{
-								if (singleValueType == SINGLE_VALUE_TYPE_STRING)
-								{
-									String val = c.getString(c.getColumnIndex(columnName));
-									c.close();
-									return val;
-								}
-								else if (singleValueType == SINGLE_VALUE_TYPE_INT)
-								{
-									Integer val = c.getInt(c.getColumnIndex(columnName));
-									c.close();
-									return val;
-								}
-								else if (singleValueType == SINGLE_VALUE_TYPE_FLOAT)
-								{
-									Float val = c.getFloat(c.getColumnIndex(columnName));
-									c.close();
-									return val;
-								}
-								else if (singleValueType == SINGLE_VALUE_TYPE_DOUBLE)
-								{
-									Double val = c.getDouble(c.getColumnIndex(columnName));
-									c.close();
-									return val;
-								}
-							}
-						}
-					}
-					else
-					{
-						/*
-						 * Return a recordset.
-						 */
-						DbRecordSet recSet = new DbRecordSet();
-						DbRecord rec;
-						if (c.moveToFirst())
-						{
-							do
-							{
-								rec = new DbRecord();
-								for (int i = 0; i < c.getColumnCount(); i++)
-								{
-									String key = c.getColumnName(i);
-									String value = c.getString(i);
-									rec.set(key, value);
-								}
-								recSet.add(rec);
-							}
-							while (c.moveToNext());
-							c.close();
-							return recSet;
-						}
-
-						return null;
-					}
+					return readSingleValue(c, singleValueType);
+				}
+				else
+				{
+					/*
+					 * Return a recordset.
+					 */
+					return readRecordSet(c);
 				}
 			}
 			catch (Exception ex)
@@ -921,4 +1165,288 @@ class DbtoolActionUnit implements IDbtoolAction
 		}
 		return null;
 	}
+
+	/**
+	 * Runs a 'select' query and returns an iterator that reads its rows lazily.
+	 * 
+	 * @return The DbRecordIterator.
+	 */
+	DbRecordIterator iterate()
+	{
+		if (this.action != ACTION_SELECT)
+		{
+			throw new IllegalStateException("Only a 'select' query can be iterated.");
+		}
+		return new DbRecordIterator(selectQuery.run());
+	}
+
+	/**
+	 * Runs a 'select' query and reads its result into a ColumnarRecordSet.
+	 * 
+	 * @return The ColumnarRecordSet.
+	 */
+	ColumnarRecordSet runColumnar()
+	{
+		if (this.action != ACTION_SELECT)
+		{
+			throw new IllegalStateException("Only a 'select' query has a columnar result.");
+		}
+		return new ColumnarRecordSet(selectQuery.run());
+	}
+
+	/**
+	 * Runs a 'select' query as an EXISTS check.
+	 * 
+	 * @return <b>true</b> if a row matches; <b>false</b> otherwise.
+	 */
+	boolean exists()
+	{
+		if (this.action != ACTION_SELECT)
+		{
+			throw new IllegalStateException("Only a 'select' query can be checked for rows.");
+		}
+		return selectQuery.runExists();
+	}
+
+	/**
+	 * Runs a 'select' query as a COUNT(*) query.
+	 * 
+	 * @return The number of rows.
+	 */
+	long count()
+	{
+		if (this.action != ACTION_SELECT)
+		{
+			throw new IllegalStateException("Only a 'select' query can be counted.");
+		}
+		return selectQuery.runCount();
+	}
+
+	/**
+	 * Runs a 'select' query and wraps its Cursor in a CursorRecordSet, whose rows are read on demand.
+	 * 
+	 * @return The CursorRecordSet.
+	 */
+	CursorRecordSet runView()
+	{
+		if (this.action != ACTION_SELECT)
+		{
+			throw new IllegalStateException("Only a 'select' query has a row view result.");
+		}
+		return new CursorRecordSet(selectQuery.run());
+	}
+
+	/**
+	 * Compiles the query into a PreparedQuery that can be run many times without rebuilding it.
+	 * 
+	 * @param dbtool
+	 *        The Dbtool instance to run the prepared query on.
+	 * @return The PreparedQuery.
+	 */
+	PreparedQuery prepare(Dbtool dbtool)
+	{
+		ArrayList<Object> bindArgs = new ArrayList<Object>();
+
+		if (this.action == ACTION_UPDATE)
+		{
+			String sql = updateQuery.compile(bindArgs);
+			return new PreparedQuery(dbtool, QueryType.UPDATE, sql, bindArgs, false, null, getTables());
+		}
+
+		if (this.action == ACTION_INSERT)
+		{
+			String sql = insertQuery.compile(bindArgs);
+			return new PreparedQuery(dbtool, QueryType.INSERT, sql, bindArgs, false, null, getTables());
+		}
+
+		if (this.action == ACTION_DELETE)
+		{
+			String sql = deleteQuery.compile(bindArgs);
+			return new PreparedQuery(dbtool, QueryType.DELETE, sql, bindArgs, false, null, getTables());
+		}
+
+		if (this.action == ACTION_SELECT)
+		{
+			String sql = selectQuery.compile(bindArgs);
+			return new PreparedQuery(dbtool, QueryType.SELECT, sql, bindArgs, gettingCursor,
+				gettingSingleValue ? singleValueType : null, getTables());
+		}
+
+		throw new IllegalStateException("No query to prepare.");
+	}
+
+	/**
+	 * Checks whether a single value of the type can be read with SQLiteStatement.simpleQueryForLong() or
+	 * simpleQueryForString(). Floating point values go through a Cursor, as reading them as text would lose precision,
+	 * and so do blobs.
+	 */
+	static boolean isSimpleQueryType(String singleValueType)
+	{
+		return singleValueType == SINGLE_VALUE_TYPE_STRING || singleValueType == SINGLE_VALUE_TYPE_INT
+			|| singleValueType == SINGLE_VALUE_TYPE_LONG || singleValueType == SINGLE_VALUE_TYPE_BOOLEAN;
+	}
+
+	/**
+	 * Reads a single value from a compiled statement whose bind values are set, for the types accepted by
+	 * isSimpleQueryType().
+	 * 
+	 * @return The value, or null if the query returns no rows.
+	 */
+	static Object simpleQuery(SQLiteStatement statement, String singleValueType)
+	{
+		try
+		{
+			if (singleValueType == SINGLE_VALUE_TYPE_STRING)
+			{
+				return statement.simpleQueryForString();
+			}
+			return toSingleValue(statement.simpleQueryForLong(), singleValueType);
+		}
+		catch (SQLiteDoneException ex)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Converts a value read with simpleQueryForLong() to the requested single value type.
+	 */
+	static Object toSingleValue(Long value, String singleValueType)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+		if (singleValueType == SINGLE_VALUE_TYPE_INT)
+		{
+			return value.intValue();
+		}
+		if (singleValueType == SINGLE_VALUE_TYPE_BOOLEAN)
+		{
+			return value.longValue() != 0;
+		}
+		return value;
+	}
+
+	/**
+	 * Reads the single value of a one-column query result, and closes the Cursor.
+	 * 
+	 * @param c
+	 *        The query result.
+	 * @param singleValueType
+	 *        One of the SINGLE_VALUE_TYPE_* constants.
+	 * @return The value of the first row, or null if there are no rows.
+	 */
+	static Object readSingleValue(Cursor c, String singleValueType)
+	{
+		try
+		{
+			if (c.getColumnCount() == 1 && c.moveToFirst())
+			{
+				if (singleValueType == SINGLE_VALUE_TYPE_STRING)
+				{
+					return c.getString(0);
+				}
+				else if (singleValueType == SINGLE_VALUE_TYPE_INT)
+				{
+					return c.getInt(0);
+				}
+				else if (singleValueType == SINGLE_VALUE_TYPE_FLOAT)
+				{
+					return c.getFloat(0);
+				}
+				else if (singleValueType == SINGLE_VALUE_TYPE_DOUBLE)
+				{
+					return c.getDouble(0);
+				}
+				else if (singleValueType == SINGLE_VALUE_TYPE_LONG)
+				{
+					return c.getLong(0);
+				}
+				else if (singleValueType == SINGLE_VALUE_TYPE_BLOB)
+				{
+					return c.getBlob(0);
+				}
+				else if (singleValueType == SINGLE_VALUE_TYPE_BOOLEAN)
+				{
+					return c.getLong(0) != 0;
+				}
+			}
+			return null;
+		}
+		finally
+		{
+			c.close();
+		}
+	}
+
+	/**
+	 * Reads all the rows of a query result into a DbRecordSet, and closes the Cursor.
+	 * 
+	 * @param c
+	 *        The query result.
+	 * @return The DbRecordSet, or null if there are no rows.
+	 */
+	static DbRecordSet readRecordSet(Cursor c)
+	{
+		try
+		{
+			if (!c.moveToFirst())
+			{
+				return null;
+			}
+
+			DbRecordSet recSet = new DbRecordSet();
+			String[] columnNames = c.getColumnNames();
+			DbRecord rec;
+			do
+			{
+				rec = new DbRecord();
+				readRow(c, columnNames, rec);
+				recSet.add(rec);
+			}
+			while (c.moveToNext());
+			return recSet;
+		}
+		finally
+		{
+			c.close();
+		}
+	}
+
+	/**
+	 * Reads the values of the Cursor's current row into a DbRecord. Each value is stored with its native SQLite type:
+	 * integers as long, floats as double, blobs as byte[] and NULLs as null, rather than being converted to a String.
+	 * 
+	 * @param c
+	 *        The query result, positioned on a row.
+	 * @param columnNames
+	 *        The column names of the query result.
+	 * @param rec
+	 *        The DbRecord to read into.
+	 */
+	static void readRow(Cursor c, String[] columnNames, DbRecord rec)
+	{
+		for (int i = 0; i < columnNames.length; i++)
+		{
+			switch (c.getType(i))
+			{
+				case Cursor.FIELD_TYPE_NULL:
+					rec.setNull(columnNames[i]);
+					break;
+				case Cursor.FIELD_TYPE_INTEGER:
+					rec.set(columnNames[i], c.getLong(i));
+					break;
+				case Cursor.FIELD_TYPE_FLOAT:
+					rec.set(columnNames[i], c.getDouble(i));
+					break;
+				case Cursor.FIELD_TYPE_BLOB:
+					rec.set(columnNames[i], c.getBlob(i));
+					break;
+				default:
+					rec.set(columnNames[i], c.getString(i));
+					break;
+			}
+		}
+	}
 }
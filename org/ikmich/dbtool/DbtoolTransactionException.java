@@ -0,0 +1,23 @@
+package org.ikmich.dbtool;
+
+/**
+ * Error when the work of dbtool.inTransaction(...) throws a checked exception, in which case the exception thrown by
+ * the work is the cause, or when the transaction could not be committed. The transaction has been rolled back.
+ * 
+ * @author Ikenna Agbasimalo
+ */
+public class DbtoolTransactionException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+	static String msg = "The transaction was rolled back.";
+
+	public DbtoolTransactionException(Throwable cause)
+	{
+		super(msg, cause);
+	}
+
+	public DbtoolTransactionException(String message)
+	{
+		super(message);
+	}
+}
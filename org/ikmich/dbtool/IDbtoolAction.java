@@ -30,6 +30,12 @@ public interface IDbtoolAction
 	
 	IDbtoolAction getDouble(String column);
 
+	IDbtoolAction getLong(String column);
+
+	IDbtoolAction getBlob(String column);
+
+	IDbtoolAction getBoolean(String column);
+
 	IDbtoolAction from(String table);
 
 	IDbtoolAction from(Object... tables);
@@ -50,6 +56,20 @@ public interface IDbtoolAction
 
 	IDbtoolAction recordSet(DbRecordSet rows);
 
+	IDbtoolAction upsertInto(String table);
+
+	IDbtoolAction onConflict(String... columns);
+
+	IDbtoolAction doUpdate(String... columns);
+
+	IDbtoolAction doNothing();
+
+	IDbtoolAction conflictAlgorithm(int conflictAlgorithm);
+
+	IDbtoolAction batchSize(int batchSize);
+
+	IDbtoolAction multiRowValues(boolean multiRowValues);
+
 	IDbtoolAction set(String name, Object value);
 
 	IDbtoolAction set(String name, Byte value);
@@ -80,6 +100,12 @@ public interface IDbtoolAction
 
 	IDbtoolAction or();
 
+	IDbtoolAction not();
+
+	IDbtoolAction beginGroup();
+
+	IDbtoolAction endGroup();
+
 	IDbtoolAction whereLike(String field, Object value);
 
 	IDbtoolAction whereEquals(String field, Object value);
@@ -94,6 +120,8 @@ public interface IDbtoolAction
 
 	IDbtoolAction whereLessThanOrEquals(String field, Object value);
 
+	IDbtoolAction whereIn(String field, Object[] values);
+
 	IDbtoolAction whereArgs(String[] whereArgs);
 
 	IDbtoolAction distinct();
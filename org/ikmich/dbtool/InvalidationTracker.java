@@ -0,0 +1,151 @@
+package org.ikmich.dbtool;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tracks the queries observed on a Dbtool, and tells those that read a table when a write changes it. Table names are
+ * compared case-insensitively, as in SQLite.
+ * 
+ * @author Ikenna Agbasimalo
+ */
+final class InvalidationTracker
+{
+	private static final Pattern SELECT_PATTERN = Pattern.compile("\\bSELECT\\b", Pattern.CASE_INSENSITIVE);
+
+	private static ScheduledExecutorService _refresher;
+
+	private final CopyOnWriteArrayList<LiveQuery> _liveQueries = new CopyOnWriteArrayList<LiveQuery>();
+
+	/**
+	 * Gets the thread that refreshes observed queries, shared by all the trackers.
+	 */
+	static synchronized ScheduledExecutorService getRefresher()
+	{
+		if (_refresher == null)
+		{
+			_refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "Dbtool observe");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return _refresher;
+	}
+
+	void add(LiveQuery liveQuery)
+	{
+		_liveQueries.add(liveQuery);
+	}
+
+	void remove(LiveQuery liveQuery)
+	{
+		_liveQueries.remove(liveQuery);
+	}
+
+	boolean hasObservers()
+	{
+		return !_liveQueries.isEmpty();
+	}
+
+	/**
+	 * Invalidates the observed queries that read any of the tables.
+	 */
+	void tablesChanged(Collection<String> tables)
+	{
+		for (LiveQuery liveQuery : _liveQueries)
+		{
+			if (liveQuery.readsAny(tables))
+			{
+				liveQuery.invalidate();
+			}
+		}
+	}
+
+	/**
+	 * Invalidates every observed query, when the tables changed are not known.
+	 */
+	void allTablesChanged()
+	{
+		for (LiveQuery liveQuery : _liveQueries)
+		{
+			liveQuery.invalidate();
+		}
+	}
+
+	/**
+	 * Gets the names of the tables of a FROM (or INSERT INTO, UPDATE, DELETE FROM) expression: the first name of each
+	 * comma-separated part, and the name after each JOIN.
+	 * 
+	 * @param tableExpression
+	 *        The expression, e.g. "users u JOIN posts p ON p.userId = u.id, tags".
+	 * @return The lower-case table names.
+	 */
+	static HashSet<String> parseTables(String tableExpression)
+	{
+		HashSet<String> tables = new HashSet<String>();
+		if (tableExpression == null)
+		{
+			return tables;
+		}
+
+		for (String part : tableExpression.split(","))
+		{
+			String[] tokens = part.trim().split("[\\s()]+");
+			if (tokens.length == 0 || tokens[0].length() == 0)
+			{
+				continue;
+			}
+			tables.add(normalize(tokens[0]));
+			for (int i = 0; i < tokens.length - 1; i++)
+			{
+				if ("JOIN".equalsIgnoreCase(tokens[i]))
+				{
+					tables.add(normalize(tokens[i + 1]));
+				}
+			}
+		}
+		return tables;
+	}
+
+	/**
+	 * Checks whether a query has a nested SELECT, whose tables parseTables(...) does not see.
+	 * 
+	 * @param sql
+	 *        The SQL text of the query.
+	 * @return <b>true</b> if the query has more than one SELECT.
+	 */
+	static boolean hasSubquery(String sql)
+	{
+		Matcher m = SELECT_PATTERN.matcher(sql);
+		return m.find() && m.find();
+	}
+
+	private static String normalize(String table)
+	{
+		int start = 0;
+		int end = table.length();
+		// Strip the quotes of "table", `table` and [table].
+		while (start < end && "\"`[".indexOf(table.charAt(start)) >= 0)
+		{
+			start++;
+		}
+		while (end > start && "\"`]".indexOf(table.charAt(end - 1)) >= 0)
+		{
+			end--;
+		}
+		return table.substring(start, end).toLowerCase(Locale.US);
+	}
+}
@@ -0,0 +1,188 @@
+package org.ikmich.dbtool;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A query observed with dbtool.observe(...). It is run once when observing starts, and again each time a write through
+ * the Dbtool changes a table it reads, with the result pushed to its QueryListener. The writes of a burst are gathered
+ * into one refresh: the first write schedules it after the debounce delay, and the writes that follow before it runs
+ * are covered by it. Writes within a transaction are seen when the transaction is committed.
+ * <p>
+ * Only writes made through the Dbtool are seen. exec(...) refreshes every observed query, as the tables it changes are
+ * not known. A query whose tables cannot all be read from its SQL, such as one with a subquery or on a view, is
+ * refreshed on every write. Close the LiveQuery to stop observing.
+ * 
+ * @author Ikenna Agbasimalo
+ */
+public final class LiveQuery
+{
+	/**
+	 * The default debounce delay, in milliseconds.
+	 */
+	public static final long DEFAULT_DEBOUNCE = 50;
+
+	private final Dbtool _dbtool;
+	private final InvalidationTracker _tracker;
+	private final PreparedQuery _query;
+	private final Set<String> _tables;
+	private final QueryListener _listener;
+	private final long _debounce;
+	private ScheduledFuture<?> _pendingRefresh;
+	private volatile boolean _closed = false;
+
+	LiveQuery(Dbtool dbtool, InvalidationTracker tracker, PreparedQuery query, Set<String> tables,
+		QueryListener listener, long debounceMillis)
+	{
+		_dbtool = dbtool;
+		_tracker = tracker;
+		_query = query;
+		_tables = tables;
+		_listener = listener;
+		_debounce = debounceMillis;
+	}
+
+	/**
+	 * Gets the names of the tables the query reads, in lower case.
+	 *
+	 * @return The table names, or null if they are not known, in which case every write refreshes the query.
+	 */
+	public Set<String> getTables()
+	{
+		return _tables;
+	}
+
+	boolean readsAny(Collection<String> tables)
+	{
+		if (_tables == null)
+		{
+			return true;
+		}
+		for (String table : tables)
+		{
+			if (_tables.contains(table))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Schedules a refresh after the debounce delay, unless one is already pending.
+	 */
+	synchronized void invalidate()
+	{
+		if (_closed || _pendingRefresh != null)
+		{
+			return;
+		}
+		_pendingRefresh = InvalidationTracker.getRefresher().schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				refreshNow();
+			}
+		}, _debounce, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs the query again and pushes the result to the listener, without waiting for a write.
+	 */
+	public synchronized void refresh()
+	{
+		if (_pendingRefresh != null)
+		{
+			_pendingRefresh.cancel(false);
+			_pendingRefresh = null;
+		}
+		_pendingRefresh = InvalidationTracker.getRefresher().schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				refreshNow();
+			}
+		}, 0, TimeUnit.MILLISECONDS);
+	}
+
+	private void refreshNow()
+	{
+		synchronized (this)
+		{
+			// Writes from here on schedule another refresh, as this one may not see them.
+			_pendingRefresh = null;
+		}
+		if (_closed)
+		{
+			return;
+		}
+
+		Object result;
+		try
+		{
+			_dbtool.acquireDb();
+			try
+			{
+				result = _query.run();
+			}
+			finally
+			{
+				_dbtool.releaseDb();
+			}
+		}
+		catch (Exception ex)
+		{
+			if (!_closed)
+			{
+				_listener.onError(ex);
+			}
+			return;
+		}
+		catch (Error err)
+		{
+			// e.g. the Error of openDb() when no database is defined, which the refresher would swallow.
+			if (!_closed)
+			{
+				_listener.onError(new RuntimeException(err));
+			}
+			return;
+		}
+		if (!_closed)
+		{
+			_listener.onResult(result);
+		}
+	}
+
+	/**
+	 * Stops observing the query. No result is pushed to the listener after this returns, except one being pushed at
+	 * the time.
+	 */
+	public void close()
+	{
+		synchronized (this)
+		{
+			_closed = true;
+			if (_pendingRefresh != null)
+			{
+				_pendingRefresh.cancel(false);
+				_pendingRefresh = null;
+			}
+		}
+		_tracker.remove(this);
+	}
+
+	public boolean isClosed()
+	{
+		return _closed;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "LiveQuery[" + _query.getSql() + "]";
+	}
+}
@@ -0,0 +1,205 @@
+package org.ikmich.dbtool;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.ikmich.dbtool.query.BindArgs;
+import org.ikmich.dbtool.query.QueryType;
+import org.ikmich.dbtool.query.StatementCache;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * A query compiled once from a Dbtool query chain, which can be run many times with different bind values. Created
+ * with dbtool.prepare() at the end of a query chain, in place of dbtool.run():
+ * <p>
+ * <b>PreparedQuery q = dbtool.get("username").from("users").whereEquals("id", 0).prepare();</b><br/>
+ * <b>DbRecordSet rows = (DbRecordSet) q.run(userId);</b>
+ * <p>
+ * Each value passed to the where* comparison methods (and each column value of an insert or update) becomes a bind
+ * slot, in the order it appears in the SQL. The values given while building the chain are used when run() is called
+ * without arguments. A PreparedQuery is immutable and can be shared between threads.
+ *
+ * @author Ikenna Agbasimalo
+ */
+public final class PreparedQuery
+{
+	private final Dbtool _dbtool;
+	private final QueryType _type;
+	private final String _sql;
+	private final Object[] _bindArgs;
+	private final boolean _returnsCursor;
+	private final String _singleValueType;
+	private final Set<String> _tables;
+
+	PreparedQuery(Dbtool dbtool, QueryType type, String sql, List<Object> bindArgs, boolean returnsCursor,
+		String singleValueType, Set<String> tables)
+	{
+		_dbtool = dbtool;
+		_type = type;
+		_sql = sql;
+		_bindArgs = bindArgs.toArray();
+		_returnsCursor = returnsCursor;
+		_singleValueType = singleValueType;
+		_tables = tables;
+	}
+
+	/**
+	 * Gets the SQL text of the query.
+	 *
+	 * @return The SQL text, with '?' placeholders for the bind slots.
+	 */
+	public String getSql()
+	{
+		return _sql;
+	}
+
+	/**
+	 * Gets the kind of the query.
+	 *
+	 * @return The QueryType.
+	 */
+	public QueryType getType()
+	{
+		return _type;
+	}
+
+	/**
+	 * Gets the names of the tables the query reads or writes, in lower case.
+	 *
+	 * @return The table names.
+	 */
+	public Set<String> getTables()
+	{
+		return _tables;
+	}
+
+	/**
+	 * Gets the number of bind slots of the query.
+	 *
+	 * @return The number of values run(Object...) expects.
+	 */
+	public int getBindArgCount()
+	{
+		return _bindArgs.length;
+	}
+
+	/**
+	 * Runs the query with the bind values given while building the query chain.
+	 *
+	 * @return The same result dbtool.run() would return for the query chain.
+	 */
+	public Object run()
+	{
+		return execute(_bindArgs);
+	}
+
+	/**
+	 * Runs the query with new bind values.
+	 *
+	 * @param bindArgs
+	 *        The values for the bind slots, in the order they appear in the SQL.
+	 * @return The same result dbtool.run() would return for the query chain.
+	 */
+	public Object run(Object... bindArgs)
+	{
+		if (bindArgs.length != _bindArgs.length)
+		{
+			throw new IllegalArgumentException("Expected " + _bindArgs.length + " bind values, got "
+				+ bindArgs.length + ".");
+		}
+		return execute(bindArgs);
+	}
+
+	private Object execute(Object[] bindArgs)
+	{
+		SQLiteDatabase db = _dbtool.getActiveDb();
+		if (db == null)
+			throw new NoDatabaseForDbtoolException();
+
+		_dbtool.countStatement();
+		StatementCache cache = _dbtool.getStatementCache();
+
+		if (_type == QueryType.SELECT && _singleValueType != null
+			&& DbtoolActionUnit.isSimpleQueryType(_singleValueType))
+		{
+			SQLiteStatement statement = cache.acquire(_sql);
+			try
+			{
+				bindAll(statement, bindArgs);
+				return DbtoolActionUnit.simpleQuery(statement, _singleValueType);
+			}
+			finally
+			{
+				cache.release(_sql, statement);
+			}
+		}
+
+		if (_type == QueryType.SELECT)
+		{
+			Cursor c = db.rawQuery(_sql, BindArgs.toStringArray(null, Arrays.asList(bindArgs)));
+			if (_returnsCursor)
+			{
+				return c;
+			}
+			if (_singleValueType != null)
+			{
+				return DbtoolActionUnit.readSingleValue(c, _singleValueType);
+			}
+			return DbtoolActionUnit.readRecordSet(c);
+		}
+
+		SQLiteStatement statement = null;
+		try
+		{
+			Object result;
+			if (_type == QueryType.INSERT)
+			{
+				try
+				{
+					statement = cache.acquire(_sql);
+					bindAll(statement, bindArgs);
+					result = statement.executeInsert();
+				}
+				catch (SQLException ex)
+				{
+					// Same outcome as InsertQuery.run() on error.
+					result = -1L;
+				}
+			}
+			else
+			{
+				statement = cache.acquire(_sql);
+				bindAll(statement, bindArgs);
+				result = statement.executeUpdateDelete();
+			}
+			_dbtool.tablesWritten(_tables, result);
+			return result;
+		}
+		finally
+		{
+			if (statement != null)
+			{
+				cache.release(_sql, statement);
+			}
+		}
+	}
+
+	private static void bindAll(SQLiteStatement statement, Object[] bindArgs)
+	{
+		for (int i = 0; i < bindArgs.length; i++)
+		{
+			BindArgs.bind(statement, i + 1, bindArgs[i]);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return _sql;
+	}
+}
@@ -0,0 +1,27 @@
+package org.ikmich.dbtool;
+
+/**
+ * Receives the results of a query observed with dbtool.observe(...). Called on the thread that refreshes observed
+ * queries, not the thread that started observing: post to the UI thread to update views.
+ * 
+ * @author Ikenna Agbasimalo
+ */
+public interface QueryListener
+{
+	/**
+	 * Called with the first result of the query, and with a new result each time a write changes a table it reads.
+	 * 
+	 * @param result
+	 *        The same result dbtool.run() would return for the query chain: null means the query returned no rows,
+	 *        never that it failed, as failures go to onError(...). A Cursor result must be closed by the listener.
+	 */
+	public void onResult(Object result);
+
+	/**
+	 * Called when the query fails to run. The query is still observed, and is run again on the next change.
+	 * 
+	 * @param ex
+	 *        The error.
+	 */
+	public void onError(Exception ex);
+}
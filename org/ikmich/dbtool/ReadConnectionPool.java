@@ -0,0 +1,265 @@
+package org.ikmich.dbtool;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.ikmich.dbtool.query.StatementCache;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * A pool of read-only connections to a database, next to the writable connection of its Dbtool. With a WAL journal,
+ * SQLite lets any number of readers run alongside one writer, so 'select' queries run on a borrowed reader do not wait
+ * for writes on other threads, or for each other. Enabled with dbtool.enableReadPool(...).
+ * <p>
+ * Readers are opened on demand, up to the pool size. When all are borrowed, a caller waits up to the borrow timeout
+ * for one to be returned, and then fails with ReadPoolTimeoutException. The wait times are recorded, and can be read
+ * with getWaitCount(), getTotalWaitMillis() and getMaxWaitMillis().
+ *
+ * @author Ikenna Agbasimalo
+ */
+public class ReadConnectionPool
+{
+	public static final int DEFAULT_SIZE = 4;
+	public static final long DEFAULT_BORROW_TIMEOUT = 10000;
+
+	/**
+	 * A read-only connection, with the statement cache of its compiled statements and the pool it belongs to.
+	 */
+	static final class Reader
+	{
+		final ReadConnectionPool pool;
+		final SQLiteDatabase db;
+		final StatementCache statementCache;
+
+		Reader(ReadConnectionPool pool, SQLiteDatabase db)
+		{
+			this.pool = pool;
+			this.db = db;
+			this.statementCache = new StatementCache(db);
+		}
+	}
+
+	private final String _path;
+	private final DbConfig _config;
+	private final int _size;
+	private final long _borrowTimeout;
+	private final ArrayBlockingQueue<Reader> _idle;
+	private final ArrayList<Reader> _all;
+	private boolean _closed = false;
+
+	private long _borrowCount;
+	private long _waitCount;
+	private long _timeoutCount;
+	private long _totalWaitNanos;
+	private long _maxWaitNanos;
+
+	ReadConnectionPool(String path, DbConfig config, int size, long borrowTimeout)
+	{
+		if (size < 1)
+		{
+			throw new IllegalArgumentException("Pool size must be at least 1.");
+		}
+		_path = path;
+		_config = config;
+		_size = size;
+		_borrowTimeout = borrowTimeout;
+		_idle = new ArrayBlockingQueue<Reader>(size);
+		_all = new ArrayList<Reader>(size);
+	}
+
+	/**
+	 * Borrows a reader, opening a new one if none is idle and the pool is not full, or else waiting for one to be
+	 * returned.
+	 *
+	 * @return The reader. Return it with release().
+	 */
+	Reader borrow()
+	{
+		Reader reader = _idle.poll();
+		if (reader == null)
+		{
+			reader = openReader();
+		}
+
+		if (reader == null)
+		{
+			long start = System.nanoTime();
+			try
+			{
+				reader = _idle.poll(_borrowTimeout, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+			}
+			long waited = System.nanoTime() - start;
+
+			synchronized (this)
+			{
+				_waitCount++;
+				_totalWaitNanos += waited;
+				if (waited > _maxWaitNanos)
+				{
+					_maxWaitNanos = waited;
+				}
+				if (reader == null)
+				{
+					_timeoutCount++;
+				}
+			}
+			if (reader == null)
+			{
+				throw new ReadPoolTimeoutException(_borrowTimeout);
+			}
+		}
+
+		synchronized (this)
+		{
+			_borrowCount++;
+		}
+		return reader;
+	}
+
+	/**
+	 * Opens a new reader if the pool is not full.
+	 *
+	 * @return The reader, or null if the pool is full.
+	 */
+	private synchronized Reader openReader()
+	{
+		if (_closed)
+		{
+			throw new IllegalStateException("The read pool is closed.");
+		}
+		if (_all.size() >= _size)
+		{
+			return null;
+		}
+
+		SQLiteDatabase db = SQLiteDatabase.openDatabase(_path, null, SQLiteDatabase.OPEN_READONLY);
+		if (_config != null)
+		{
+			_config.applyToReader(db);
+		}
+		Reader reader = new Reader(this, db);
+		_all.add(reader);
+		return reader;
+	}
+
+	/**
+	 * Returns a borrowed reader to the pool it was borrowed from.
+	 */
+	synchronized void release(Reader reader)
+	{
+		if (reader.pool != this)
+		{
+			throw new IllegalArgumentException("The reader belongs to another pool.");
+		}
+		if (_closed || !_idle.offer(reader))
+		{
+			closeReader(reader);
+			_all.remove(reader);
+		}
+	}
+
+	/**
+	 * Closes the idle readers, and the borrowed ones as they are returned.
+	 */
+	synchronized void close()
+	{
+		_closed = true;
+		Reader reader;
+		while ((reader = _idle.poll()) != null)
+		{
+			closeReader(reader);
+		}
+	}
+
+	private void closeReader(Reader reader)
+	{
+		reader.statementCache.clear();
+		reader.db.close();
+	}
+
+	public int getSize()
+	{
+		return _size;
+	}
+
+	public long getBorrowTimeout()
+	{
+		return _borrowTimeout;
+	}
+
+	/**
+	 * Gets the number of readers opened so far.
+	 */
+	public synchronized int getOpenCount()
+	{
+		return _all.size();
+	}
+
+	/**
+	 * Gets the number of readers not borrowed.
+	 */
+	public int getIdleCount()
+	{
+		return _idle.size();
+	}
+
+	public synchronized long getBorrowCount()
+	{
+		return _borrowCount;
+	}
+
+	/**
+	 * Gets the number of borrows that had to wait for a reader to be returned.
+	 */
+	public synchronized long getWaitCount()
+	{
+		return _waitCount;
+	}
+
+	/**
+	 * Gets the number of borrows that waited for the whole borrow timeout and failed.
+	 */
+	public synchronized long getTimeoutCount()
+	{
+		return _timeoutCount;
+	}
+
+	/**
+	 * Gets the total time borrows spent waiting for a reader, in milliseconds.
+	 */
+	public synchronized long getTotalWaitMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(_totalWaitNanos);
+	}
+
+	/**
+	 * Gets the longest time a borrow waited for a reader, in milliseconds.
+	 */
+	public synchronized long getMaxWaitMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(_maxWaitNanos);
+	}
+
+	public synchronized void resetStats()
+	{
+		_borrowCount = 0;
+		_waitCount = 0;
+		_timeoutCount = 0;
+		_totalWaitNanos = 0;
+		_maxWaitNanos = 0;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "ReadConnectionPool[size=" + _size + ", open=" + _all.size() + ", idle=" + _idle.size() + ", borrows="
+			+ _borrowCount + ", waits=" + _waitCount + ", timeouts=" + _timeoutCount + ", totalWaitMs="
+			+ getTotalWaitMillis() + ", maxWaitMs=" + getMaxWaitMillis() + "]";
+	}
+}
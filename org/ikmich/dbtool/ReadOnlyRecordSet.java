@@ -0,0 +1,172 @@
+package org.ikmich.dbtool;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * A read-only DbRecordSet whose rows are given by get(row) and size(). The rest of the read side of the List interface
+ * goes through them; the write side throws UnsupportedOperationException. Base of ColumnarRecordSet and
+ * CursorRecordSet.
+ *
+ * @author Ikenna Agbasimalo
+ */
+abstract class ReadOnlyRecordSet extends DbRecordSet
+{
+	private final List<DbRecord> _rows = new AbstractList<DbRecord>()
+	{
+		@Override
+		public DbRecord get(int row)
+		{
+			return ReadOnlyRecordSet.this.get(row);
+		}
+
+		@Override
+		public int size()
+		{
+			return ReadOnlyRecordSet.this.size();
+		}
+	};
+
+	@Override
+	public abstract DbRecord get(int arg0);
+
+	@Override
+	public abstract int size();
+
+	/*
+	 * Read side of the List interface, through get(row).
+	 */
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+	@Override
+	public Iterator<DbRecord> iterator()
+	{
+		return _rows.iterator();
+	}
+
+	@Override
+	public ListIterator<DbRecord> listIterator()
+	{
+		return _rows.listIterator();
+	}
+
+	@Override
+	public ListIterator<DbRecord> listIterator(int arg0)
+	{
+		return _rows.listIterator(arg0);
+	}
+
+	@Override
+	public List<DbRecord> subList(int arg0, int arg1)
+	{
+		return _rows.subList(arg0, arg1);
+	}
+
+	@Override
+	public boolean contains(Object arg0)
+	{
+		return _rows.contains(arg0);
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> arg0)
+	{
+		return _rows.containsAll(arg0);
+	}
+
+	@Override
+	public int indexOf(Object arg0)
+	{
+		return _rows.indexOf(arg0);
+	}
+
+	@Override
+	public int lastIndexOf(Object arg0)
+	{
+		return _rows.lastIndexOf(arg0);
+	}
+
+	@Override
+	public Object[] toArray()
+	{
+		return _rows.toArray();
+	}
+
+	@Override
+	public <T> T[] toArray(T[] arg0)
+	{
+		return _rows.toArray(arg0);
+	}
+
+	/*
+	 * The set is read-only.
+	 */
+
+	@Override
+	public boolean add(DbRecord arg0)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void add(int arg0, DbRecord arg1)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends DbRecord> arg0)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean addAll(int arg0, Collection<? extends DbRecord> arg1)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void clear()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean remove(Object arg0)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public DbRecord remove(int arg0)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> arg0)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> arg0)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public DbRecord set(int arg0, DbRecord arg1)
+	{
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,16 @@
+package org.ikmich.dbtool;
+
+/**
+ * Error when no read-only connection of a ReadConnectionPool was returned within the borrow timeout.
+ * 
+ * @author Ikenna Agbasimalo
+ */
+public class ReadPoolTimeoutException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	public ReadPoolTimeoutException(long timeoutMillis)
+	{
+		super("No read connection was available within " + timeoutMillis + " ms.");
+	}
+}
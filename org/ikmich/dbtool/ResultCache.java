@@ -0,0 +1,318 @@
+package org.ikmich.dbtool;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ikmich.dbtool.query.StatementCache;
+
+/**
+ * LRU cache of the results of 'select' queries, keyed by the normalized SQL of the query and its bind values. It is
+ * bounded both by a number of entries and by an estimate of the memory the cached results take. A write through the
+ * Dbtool removes the results of the queries that read the tables it changes; exec(...) clears the cache, as the tables
+ * it changes are not known.
+ * <p>
+ * Results are copied into the cache and copied out of it, so a caller may change the DbRecordSet it gets without
+ * affecting the cache. Enabled with dbtool.enableResultCache(...).
+ *
+ * @author Ikenna Agbasimalo
+ */
+public class ResultCache
+{
+	public static final int DEFAULT_MAX_ENTRIES = 100;
+	public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+
+	/**
+	 * A cached result.
+	 */
+	static final class Entry
+	{
+		final Object value;
+		final Set<String> tables;
+		final long bytes;
+
+		Entry(Object value, Set<String> tables, long bytes)
+		{
+			this.value = value;
+			this.tables = tables;
+			this.bytes = bytes;
+		}
+	}
+
+	private final int _maxEntries;
+	private final long _maxBytes;
+	private final LinkedHashMap<String, Entry> _entries;
+	private long _bytes = 0;
+	private long _generation = 0;
+
+	private long _hitCount = 0;
+	private long _missCount = 0;
+	private long _evictionCount = 0;
+	private long _invalidationCount = 0;
+
+	public ResultCache(int maxEntries, long maxBytes)
+	{
+		_maxEntries = maxEntries;
+		_maxBytes = maxBytes;
+		_entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	}
+
+	/**
+	 * Makes the key of a query result.
+	 *
+	 * @param sql
+	 *        The SQL text of the query.
+	 * @param bindArgs
+	 *        The values bound to the query.
+	 * @param resultType
+	 *        What the result is read as, e.g. the type of a single value.
+	 * @return The key.
+	 */
+	static String key(String sql, List<Object> bindArgs, String resultType)
+	{
+		StringBuilder key = new StringBuilder(resultType).append('|').append(StatementCache.normalize(sql));
+		for (Object arg : bindArgs)
+		{
+			// The type is part of the key: 1 and "1" may not match the same rows.
+			key.append('|');
+			if (arg == null)
+			{
+				key.append("null");
+			}
+			else if (arg instanceof byte[])
+			{
+				key.append("blob:");
+				for (byte b : (byte[]) arg)
+				{
+					key.append(Integer.toHexString(b & 0xff)).append(',');
+				}
+			}
+			else
+			{
+				key.append(arg.getClass().getSimpleName()).append(':').append(arg);
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Gets a cached result.
+	 *
+	 * @param key
+	 *        The key of the result.
+	 * @return The Entry, whose value is a copy of the result, or null if the result is not cached.
+	 */
+	Entry get(String key)
+	{
+		Entry entry;
+		synchronized (this)
+		{
+			entry = _entries.get(key);
+			if (entry == null)
+			{
+				_missCount++;
+				return null;
+			}
+			_hitCount++;
+		}
+		return new Entry(copy(entry.value), entry.tables, entry.bytes);
+	}
+
+	/**
+	 * Gets the number of writes seen so far. Taken before a query runs, and passed to put(...), so the result of a
+	 * query that was running while a write was made is not cached.
+	 */
+	synchronized long getGeneration()
+	{
+		return _generation;
+	}
+
+	/**
+	 * Caches a result.
+	 *
+	 * @param key
+	 *        The key of the result.
+	 * @param value
+	 *        The result. It is copied.
+	 * @param tables
+	 *        The tables the query reads.
+	 * @param generation
+	 *        The value of getGeneration() before the query ran.
+	 */
+	void put(String key, Object value, Set<String> tables, long generation)
+	{
+		long bytes = estimateBytes(key, value);
+		if (bytes > _maxBytes)
+		{
+			return;
+		}
+		Object copy = copy(value);
+
+		synchronized (this)
+		{
+			if (generation != _generation)
+			{
+				return;
+			}
+			Entry previous = _entries.put(key, new Entry(copy, tables, bytes));
+			if (previous != null)
+			{
+				_bytes -= previous.bytes;
+			}
+			_bytes += bytes;
+
+			Iterator<Map.Entry<String, Entry>> it = _entries.entrySet().iterator();
+			while ((_entries.size() > _maxEntries || _bytes > _maxBytes) && it.hasNext())
+			{
+				Entry eldest = it.next().getValue();
+				it.remove();
+				_bytes -= eldest.bytes;
+				_evictionCount++;
+			}
+		}
+	}
+
+	/**
+	 * Removes the results of the queries that read any of the tables.
+	 *
+	 * @param tables
+	 *        The lower-case table names.
+	 */
+	synchronized void invalidate(Collection<String> tables)
+	{
+		_generation++;
+		Iterator<Entry> it = _entries.values().iterator();
+		while (it.hasNext())
+		{
+			Entry entry = it.next();
+			for (String table : tables)
+			{
+				if (entry.tables.contains(table))
+				{
+					it.remove();
+					_bytes -= entry.bytes;
+					_invalidationCount++;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes every cached result.
+	 */
+	public synchronized void clear()
+	{
+		_generation++;
+		_invalidationCount += _entries.size();
+		_entries.clear();
+		_bytes = 0;
+	}
+
+	/**
+	 * Copies a result, so that the copy shares no mutable state with it.
+	 */
+	static Object copy(Object value)
+	{
+		if (value instanceof DbRecordSet)
+		{
+			DbRecordSet rows = (DbRecordSet) value;
+			DbRecordSet copy = new DbRecordSet();
+			for (DbRecord row : rows)
+			{
+				copy.add(row.copy());
+			}
+			return copy;
+		}
+		if (value instanceof byte[])
+		{
+			return ((byte[]) value).clone();
+		}
+		// Strings and boxed numbers are immutable.
+		return value;
+	}
+
+	/**
+	 * Estimates the memory a cached result takes, in bytes.
+	 */
+	static long estimateBytes(String key, Object value)
+	{
+		long bytes = 64 + 2L * key.length();
+		if (value instanceof DbRecordSet)
+		{
+			for (DbRecord row : (DbRecordSet) value)
+			{
+				bytes += 64;
+				for (String name : row.toContentValues().keySet())
+				{
+					bytes += 32 + 2L * name.length() + estimateValueBytes(row.toContentValues().get(name));
+				}
+			}
+		}
+		else
+		{
+			bytes += estimateValueBytes(value);
+		}
+		return bytes;
+	}
+
+	private static long estimateValueBytes(Object value)
+	{
+		if (value instanceof String)
+		{
+			return 40 + 2L * ((String) value).length();
+		}
+		if (value instanceof byte[])
+		{
+			return 16 + ((byte[]) value).length;
+		}
+		return 16;
+	}
+
+	public synchronized int size()
+	{
+		return _entries.size();
+	}
+
+	/**
+	 * Gets the estimated memory taken by the cached results, in bytes.
+	 */
+	public synchronized long getBytes()
+	{
+		return _bytes;
+	}
+
+	public synchronized long getHitCount()
+	{
+		return _hitCount;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return _missCount;
+	}
+
+	public synchronized long getEvictionCount()
+	{
+		return _evictionCount;
+	}
+
+	/**
+	 * Gets the number of results removed because a write changed a table they read.
+	 */
+	public synchronized long getInvalidationCount()
+	{
+		return _invalidationCount;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "ResultCache[size=" + _entries.size() + "/" + _maxEntries + ", bytes=" + _bytes + "/" + _maxBytes
+			+ ", hits=" + _hitCount + ", misses=" + _missCount + ", evictions=" + _evictionCount
+			+ ", invalidations=" + _invalidationCount + "]";
+	}
+}
@@ -0,0 +1,21 @@
+package org.ikmich.dbtool;
+
+/**
+ * How the outermost transaction of dbtool.inTransaction(...) locks the database.
+ * 
+ * @author Ikenna Agbasimalo
+ */
+public enum TransactionMode
+{
+	/**
+	 * BEGIN IMMEDIATE: takes the write lock up front, so the transaction cannot fail to upgrade a read lock later.
+	 * Other connections can still read while it runs, in WAL mode.
+	 */
+	IMMEDIATE,
+
+	/**
+	 * BEGIN EXCLUSIVE: in rollback journal mode, also keeps other connections from reading until the transaction
+	 * ends.
+	 */
+	EXCLUSIVE
+}
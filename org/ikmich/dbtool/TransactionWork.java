@@ -0,0 +1,20 @@
+package org.ikmich.dbtool;
+
+/**
+ * The work run by dbtool.inTransaction(...). Every query run through the Dbtool within run() is part of the
+ * transaction; returning normally commits it, and throwing rolls it back.
+ * 
+ * @author Ikenna Agbasimalo
+ */
+public interface TransactionWork
+{
+	/**
+	 * Runs the queries of the transaction.
+	 * 
+	 * @param dbtool
+	 *        The Dbtool running the transaction.
+	 * @throws Exception
+	 *         To roll the transaction back.
+	 */
+	public void run(Dbtool dbtool) throws Exception;
+}
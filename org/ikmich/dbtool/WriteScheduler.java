@@ -0,0 +1,300 @@
+package org.ikmich.dbtool;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the writes of a Dbtool on one writer thread, committing them in groups. Writes from any thread are queued; the
+ * writer takes the first waiting write, gathers those that arrive within the batch delay, up to the batch size, and
+ * runs them all in one transaction, so the group shares one journal sync. Each write runs in a SAVEPOINT of the
+ * transaction, so a failing write is rolled back alone and fails only its own Future. The Futures are completed once
+ * the transaction is committed.
+ *
+ * @author Ikenna Agbasimalo
+ */
+final class WriteScheduler
+{
+	/**
+	 * The default most writes committed in one transaction.
+	 */
+	static final int DEFAULT_BATCH_SIZE = 200;
+
+	/**
+	 * The default time the writer waits for more writes after the first of a group, in milliseconds.
+	 */
+	static final long DEFAULT_BATCH_DELAY = 5;
+
+	private final Dbtool _dbtool;
+	private final int _batchSize;
+	private final long _batchDelay;
+	private final LinkedBlockingQueue<PendingWrite> _queue = new LinkedBlockingQueue<PendingWrite>();
+	private final Thread _writer;
+	private volatile boolean _closed = false;
+	private long _transactionCount = 0;
+	private long _writeCount = 0;
+
+	WriteScheduler(Dbtool dbtool, int batchSize, long batchDelayMillis)
+	{
+		_dbtool = dbtool;
+		_batchSize = Math.max(1, batchSize);
+		_batchDelay = Math.max(0, batchDelayMillis);
+		_writer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				drain();
+			}
+		}, "Dbtool writer");
+		_writer.setDaemon(true);
+		_writer.start();
+	}
+
+	/**
+	 * Queues a write.
+	 *
+	 * @param unit
+	 *        The write.
+	 * @return The Future of its result: the row id of an insert, or the number of rows of an update or delete.
+	 */
+	Future<Object> submit(DbtoolActionUnit unit)
+	{
+		PendingWrite write = new PendingWrite(unit);
+		synchronized (_queue)
+		{
+			if (_closed)
+			{
+				throw new IllegalStateException("The write scheduler is closed.");
+			}
+			_queue.add(write);
+		}
+		return write;
+	}
+
+	/**
+	 * Checks whether the calling thread is the writer thread.
+	 */
+	boolean isWriterThread()
+	{
+		return Thread.currentThread() == _writer;
+	}
+
+	private void drain()
+	{
+		ArrayList<PendingWrite> batch = new ArrayList<PendingWrite>(_batchSize);
+		while (true)
+		{
+			try
+			{
+				PendingWrite first = _queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null)
+				{
+					synchronized (_queue)
+					{
+						if (_closed && _queue.isEmpty())
+						{
+							return;
+						}
+					}
+					continue;
+				}
+
+				batch.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_batchDelay);
+				while (batch.size() < _batchSize)
+				{
+					PendingWrite next = _queue.poll();
+					if (next == null)
+					{
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0 || _closed)
+						{
+							break;
+						}
+						next = _queue.poll(remaining, TimeUnit.NANOSECONDS);
+						if (next == null)
+						{
+							break;
+						}
+					}
+					batch.add(next);
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				// close() waits for the queue to drain; the writer is not interrupted otherwise.
+			}
+
+			if (!batch.isEmpty())
+			{
+				commit(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	private void commit(final ArrayList<PendingWrite> batch)
+	{
+		try
+		{
+			_dbtool.inTransaction(new TransactionWork()
+			{
+				@Override
+				public void run(Dbtool dbtool)
+				{
+					for (final PendingWrite write : batch)
+					{
+						try
+						{
+							dbtool.inTransaction(new TransactionWork()
+							{
+								@Override
+								public void run(Dbtool dbtool)
+								{
+									write.result = dbtool.runUnit(write.unit);
+								}
+							});
+						}
+						catch (RuntimeException ex)
+						{
+							write.error = ex;
+						}
+					}
+				}
+			});
+		}
+		catch (RuntimeException ex)
+		{
+			// The transaction was not committed: none of its writes took effect.
+			for (PendingWrite write : batch)
+			{
+				write.result = null;
+				write.error = ex;
+			}
+		}
+
+		synchronized (this)
+		{
+			_transactionCount++;
+			_writeCount += batch.size();
+		}
+		for (PendingWrite write : batch)
+		{
+			write.done.countDown();
+		}
+	}
+
+	/**
+	 * Stops taking writes, and waits for the queued ones to be committed.
+	 */
+	void close()
+	{
+		synchronized (_queue)
+		{
+			_closed = true;
+		}
+		if (isWriterThread())
+		{
+			return;
+		}
+		boolean interrupted = false;
+		while (_writer.isAlive())
+		{
+			try
+			{
+				_writer.join();
+			}
+			catch (InterruptedException ex)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Gets the number of transactions committed so far.
+	 */
+	synchronized long getTransactionCount()
+	{
+		return _transactionCount;
+	}
+
+	/**
+	 * Gets the number of writes run so far. Divided by getTransactionCount(), it gives the mean size of a group.
+	 */
+	synchronized long getWriteCount()
+	{
+		return _writeCount;
+	}
+
+	/**
+	 * A queued write, and the Future of its result, completed by the writer thread.
+	 */
+	private static class PendingWrite implements Future<Object>
+	{
+		final DbtoolActionUnit unit;
+		final CountDownLatch done = new CountDownLatch(1);
+		Object result;
+		RuntimeException error;
+
+		PendingWrite(DbtoolActionUnit unit)
+		{
+			this.unit = unit;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			// A write is committed with its group, so it cannot be taken back once queued.
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled()
+		{
+			return false;
+		}
+
+		@Override
+		public boolean isDone()
+		{
+			return done.getCount() == 0;
+		}
+
+		@Override
+		public Object get() throws InterruptedException, ExecutionException
+		{
+			done.await();
+			return getResult();
+		}
+
+		@Override
+		public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+			TimeoutException
+		{
+			if (!done.await(timeout, unit))
+			{
+				throw new TimeoutException();
+			}
+			return getResult();
+		}
+
+		private Object getResult() throws ExecutionException
+		{
+			if (error != null)
+			{
+				throw new ExecutionException(error);
+			}
+			return result;
+		}
+	}
+}
@@ -1,11 +1,21 @@
 package org.ikmich.dbtool.data;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.ikmich.dbtool.DbRecord;
 import org.ikmich.dbtool.DbRecordSet;
 import org.ikmich.dbtool.Dbtool;
+import org.ikmich.dbtool.PreparedQuery;
+import org.ikmich.dbtool.TransactionWork;
+import org.ikmich.dbtool.query.InsertQuery;
 
 import android.app.AlertDialog;
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 import android.widget.Toast;
 
 public abstract class EntityFactory implements IEntityFactory
@@ -13,6 +23,8 @@ public abstract class EntityFactory implements IEntityFactory
 	protected static Context context;
 	protected static Dbtool dbtool;
 	protected long lastCreatedRecordId = 0;
+	protected RowCache rowCache;
+	private volatile long rowCacheGeneration;
 
 	public EntityFactory(Context c)
 	{
@@ -37,14 +49,114 @@ public abstract class EntityFactory implements IEntityFactory
 
 	public abstract String getTag();
 
+	/**
+	 * Enables a cache of this entity's rows by id: getById(...) reads through it, create(...), update(...) and
+	 * updateAll(...) write through it, and deletes evict from it. Rows are cached with the values written, so enable
+	 * it only for tables whose rows are written through this factory, with no column filled by a DEFAULT value or a
+	 * trigger. Writes made within a transaction of the caller evict the rows instead, as the transaction may be
+	 * rolled back. The cache is cleared when the table may have been replaced: after DDL, a switch to another database
+	 * or dropDb(...) (see Dbtool.getSchemaGeneration()).
+	 * 
+	 * @param capacity
+	 *        The most rows to cache.
+	 */
+	public void enableRowCache(int capacity)
+	{
+		rowCacheGeneration = dbtool.getSchemaGeneration();
+		rowCache = new RowCache(capacity);
+	}
+
+	public void disableRowCache()
+	{
+		rowCache = null;
+	}
+
+	/**
+	 * Gets the row cache, to read its metrics.
+	 * 
+	 * @return The RowCache, or null if it is not enabled.
+	 */
+	public RowCache getRowCache()
+	{
+		return rowCache;
+	}
+
+	/**
+	 * Gets the row cache, cleared first if the tables may have been replaced since it was last used.
+	 * 
+	 * @return The RowCache, or null if it is not enabled.
+	 */
+	private RowCache currentRowCache()
+	{
+		RowCache cache = rowCache;
+		if (cache != null)
+		{
+			long generation = dbtool.getSchemaGeneration();
+			if (generation != rowCacheGeneration)
+			{
+				cache.clear();
+				rowCacheGeneration = generation;
+			}
+		}
+		return cache;
+	}
+
+	@Override
+	public DbRecord getById(long id)
+	{
+		RowCache cache = currentRowCache();
+		if (cache != null)
+		{
+			DbRecord row = cache.get(id);
+			if (row != null)
+			{
+				return row;
+			}
+		}
+
+		try
+		{
+			dbtool.acquireDb();
+
+			long stamp = cache != null ? cache.stamp(id) : 0;
+			DbRecordSet rows = (DbRecordSet) dbtool.getAll().from(getTable()).whereEquals(COL_ID, id).run();
+			if (rows == null || rows.isEmpty())
+			{
+				return null;
+			}
+			DbRecord row = rows.get(0);
+			if (cache != null)
+			{
+				cache.putIfUnchanged(id, row, stamp);
+			}
+			return row;
+		}
+		catch (Exception ex)
+		{
+			alertError(new StringBuilder("Error getting ").append(getTag()).append(": ").toString()
+				+ ex.getMessage());
+			return null;
+		}
+		finally
+		{
+			dbtool.releaseDb();
+		}
+	}
+
 	@Override
 	public boolean create(DbRecord row)
 	{
 		try
 		{
-			dbtool.openDb();
+			dbtool.acquireDb();
 
+			// Copied before the insert runs, as the query clears the values it was given once done.
+			DbRecord written = rowCache != null ? row.copy() : null;
 			lastCreatedRecordId = (Long) dbtool.insertInto(getTable()).record(row).run();
+			if (lastCreatedRecordId > 0 && written != null)
+			{
+				cacheWritten(lastCreatedRecordId, written.set(COL_ID, lastCreatedRecordId), false);
+			}
 			return lastCreatedRecordId > 0;
 		}
 		catch (Exception ex)
@@ -55,7 +167,7 @@ public abstract class EntityFactory implements IEntityFactory
 		}
 		finally
 		{
-			dbtool.closeDb();
+			dbtool.releaseDb();
 		}
 	}
 
@@ -64,13 +176,18 @@ public abstract class EntityFactory implements IEntityFactory
 	{
 		try
 		{
-			dbtool.openDb();
+			dbtool.acquireDb();
 
 			int numRows = 0;
+			DbRecord written = rowCache != null ? record.copy() : null;
 			dbtool.update(getTable());
 			dbtool.record(record);
 			dbtool.whereEquals(COL_ID, id);
 			numRows = (Integer) dbtool.run();
+			if (numRows > 0 && written != null)
+			{
+				cacheWritten(id, written, true);
+			}
 
 			return numRows > 0;
 		}
@@ -82,17 +199,92 @@ public abstract class EntityFactory implements IEntityFactory
 		}
 		finally
 		{
-			dbtool.closeDb();
+			dbtool.releaseDb();
 		}
 	}
 
+	@Override
+	public boolean save(DbRecord row)
+	{
+		try
+		{
+			dbtool.acquireDb();
+
+			// Read before the query runs, as it clears the values it was given once done.
+			final Long id = row.toContentValues().getAsLong(COL_ID);
+			boolean saved;
+			if (dbtool.supportsUpsert())
+			{
+				long rowId = (Long) dbtool.upsertInto(getTable()).record(row).onConflict(COL_ID).run();
+				saved = rowId != -1;
+			}
+			else
+			{
+				saved = updateOrInsert(id, row);
+			}
+
+			if (rowCache != null && id != null)
+			{
+				// Whether the row was inserted or merged into an existing one is not known: read it again when asked.
+				rowCache.remove(id);
+			}
+			return saved;
+		}
+		catch (Exception ex)
+		{
+			alertError(new StringBuilder("Error saving ").append(getTag()).append(": ").toString()
+				+ ex.getMessage());
+			return false;
+		}
+		finally
+		{
+			dbtool.releaseDb();
+		}
+	}
+
+	/**
+	 * Saves a row without the ON CONFLICT clause, for SQLite before 3.24: updates the row with its id, and inserts it
+	 * if there is none, in one transaction.
+	 */
+	private boolean updateOrInsert(final Long id, final DbRecord row)
+	{
+		if (id == null)
+		{
+			return (Long) dbtool.insertInto(getTable()).record(row).run() != -1;
+		}
+
+		final boolean[] saved = new boolean[1];
+		dbtool.inTransaction(new TransactionWork()
+		{
+			@Override
+			public void run(Dbtool dbtool)
+			{
+				DbRecord values = row.copy();
+				int numRows = (Integer) dbtool.update(getTable()).record(values).whereEquals(COL_ID, id).run();
+				if (numRows > 0)
+				{
+					saved[0] = true;
+				}
+				else
+				{
+					saved[0] = (Long) dbtool.insertInto(getTable()).record(row).run() != -1;
+				}
+			}
+		});
+		return saved[0];
+	}
+
 	@Override
 	public boolean delete(long id)
 	{
 		try
 		{
-			dbtool.openDb();
+			dbtool.acquireDb();
 			int numRows = (Integer) dbtool.deleteFrom(getTable()).whereEquals(COL_ID, id).run();
+			if (rowCache != null)
+			{
+				rowCache.remove(id);
+			}
 			return numRows > 0;
 		}
 		catch (Exception ex)
@@ -103,7 +295,7 @@ public abstract class EntityFactory implements IEntityFactory
 		}
 		finally
 		{
-			dbtool.closeDb();
+			dbtool.releaseDb();
 		}
 	}
 
@@ -112,8 +304,9 @@ public abstract class EntityFactory implements IEntityFactory
 	{
 		try
 		{
-			dbtool.openDb();
+			dbtool.acquireDb();
 			int n = (Integer) dbtool.deleteFrom(getTable()).whereEquals(name, value).run();
+			clearRowCache(n);
 			return n > 0;
 		}
 		catch (Exception ex)
@@ -124,7 +317,7 @@ public abstract class EntityFactory implements IEntityFactory
 		}
 		finally
 		{
-			dbtool.closeDb();
+			dbtool.releaseDb();
 		}
 	}
 
@@ -133,8 +326,9 @@ public abstract class EntityFactory implements IEntityFactory
 	{
 		try
 		{
-			dbtool.openDb();
+			dbtool.acquireDb();
 			int n = (Integer) dbtool.deleteFrom(getTable()).record(record).run();
+			clearRowCache(n);
 			return n > 0;
 		}
 		catch (Exception ex)
@@ -145,7 +339,167 @@ public abstract class EntityFactory implements IEntityFactory
 		}
 		finally
 		{
-			dbtool.closeDb();
+			dbtool.releaseDb();
+		}
+	}
+
+	/**
+	 * The number of ids deleted per statement by deleteAll(), within SQLite's limit on bind variables.
+	 */
+	protected static final int DELETE_CHUNK_SIZE = InsertQuery.MAX_VARIABLE_NUMBER;
+
+	/**
+	 * An update statement prepared for the records that set one combination of columns.
+	 */
+	private static class UpdateShape
+	{
+		final String[] columns;
+		final PreparedQuery query;
+
+		UpdateShape(String[] columns, PreparedQuery query)
+		{
+			this.columns = columns;
+			this.query = query;
+		}
+	}
+
+	@Override
+	public int updateAll(final Map<Long, DbRecord> records)
+	{
+		try
+		{
+			dbtool.acquireDb();
+
+			final int[] numRows = new int[1];
+			final ArrayList<Long> updatedIds = new ArrayList<Long>();
+			dbtool.inTransaction(new TransactionWork()
+			{
+				@Override
+				public void run(Dbtool dbtool)
+				{
+					HashMap<String, UpdateShape> shapes = new HashMap<String, UpdateShape>();
+					for (Map.Entry<Long, DbRecord> entry : records.entrySet())
+					{
+						ContentValues values = entry.getValue().toContentValues();
+						String[] columns = values.keySet().toArray(new String[values.size()]);
+						String[] sortedColumns = columns.clone();
+						Arrays.sort(sortedColumns);
+						String shapeKey = Arrays.toString(sortedColumns);
+
+						UpdateShape shape = shapes.get(shapeKey);
+						if (shape == null)
+						{
+							/*
+							 * Prepare the statement from this record. Its values are bound in the
+							 * order the columns were read from it, then the id.
+							 */
+							PreparedQuery query = dbtool.update(getTable()).record(entry.getValue())
+								.whereEquals(COL_ID, entry.getKey()).prepare();
+							shape = new UpdateShape(columns, query);
+							shapes.put(shapeKey, shape);
+						}
+
+						Object[] bindArgs = new Object[shape.columns.length + 1];
+						for (int i = 0; i < shape.columns.length; i++)
+						{
+							bindArgs[i] = values.get(shape.columns[i]);
+						}
+						bindArgs[shape.columns.length] = entry.getKey();
+						int n = (Integer) shape.query.run(bindArgs);
+						if (n > 0)
+						{
+							numRows[0] += n;
+							updatedIds.add(entry.getKey());
+						}
+					}
+				}
+			});
+			if (rowCache != null)
+			{
+				for (Long id : updatedIds)
+				{
+					cacheWritten(id, records.get(id), true);
+				}
+			}
+			return numRows[0];
+		}
+		catch (Exception ex)
+		{
+			alertError(new StringBuilder("Error updating ").append(getTag()).append(": ").toString()
+				+ ex.getMessage());
+			return -1;
+		}
+		finally
+		{
+			dbtool.releaseDb();
+		}
+	}
+
+	@Override
+	public int deleteAll(final long[] ids)
+	{
+		try
+		{
+			dbtool.acquireDb();
+
+			final int[] numRows = new int[1];
+			dbtool.inTransaction(new TransactionWork()
+			{
+				@Override
+				public void run(Dbtool dbtool)
+				{
+					for (int start = 0; start < ids.length; start += DELETE_CHUNK_SIZE)
+					{
+						int end = Math.min(start + DELETE_CHUNK_SIZE, ids.length);
+						Long[] chunk = new Long[end - start];
+						for (int i = start; i < end; i++)
+						{
+							chunk[i - start] = ids[i];
+						}
+						numRows[0] += (Integer) dbtool.deleteFrom(getTable()).whereIn(COL_ID, chunk).run();
+					}
+				}
+			});
+			if (rowCache != null)
+			{
+				for (long id : ids)
+				{
+					rowCache.remove(id);
+				}
+			}
+			return numRows[0];
+		}
+		catch (Exception ex)
+		{
+			alertError(new StringBuilder("Error deleting ").append(getTag()).append(": ").toString()
+				+ ex.getMessage());
+			return -1;
+		}
+		finally
+		{
+			dbtool.releaseDb();
+		}
+	}
+
+	@Override
+	public int deleteWhere(String whereClause, String[] whereArgs)
+	{
+		try
+		{
+			dbtool.acquireDb();
+			int n = (Integer) dbtool.deleteFrom(getTable()).where(whereClause).whereArgs(whereArgs).run();
+			clearRowCache(n);
+			return n;
+		}
+		catch (Exception ex)
+		{
+			alertError(new StringBuilder("Error deleting ").append(getTag()).append(": ").toString()
+				+ ex.getMessage());
+			return -1;
+		}
+		finally
+		{
+			dbtool.releaseDb();
 		}
 	}
 
@@ -154,9 +508,8 @@ public abstract class EntityFactory implements IEntityFactory
 	{
 		try
 		{
-			dbtool.openDb();
-			DbRecordSet records = (DbRecordSet) dbtool.get(COL_ID).from(getTable()).run();
-			return records != null && records.size() > 0;
+			dbtool.acquireDb();
+			return dbtool.getAll().from(getTable()).exists();
 		}
 		catch (Exception ex)
 		{
@@ -165,7 +518,43 @@ public abstract class EntityFactory implements IEntityFactory
 		}
 		finally
 		{
-			dbtool.closeDb();
+			dbtool.releaseDb();
+		}
+	}
+
+	/**
+	 * Writes the values written to a row through the row cache. Within a transaction of the caller, which may yet be
+	 * rolled back, the row is evicted instead, to be read again once the transaction is over.
+	 * 
+	 * @param merge
+	 *        Whether the values are merged into the cached row (an update) or replace it (an insert).
+	 */
+	private void cacheWritten(long id, DbRecord written, boolean merge)
+	{
+		RowCache cache = currentRowCache();
+		SQLiteDatabase db = dbtool.getActiveDb();
+		if (db != null && db.inTransaction())
+		{
+			cache.remove(id);
+		}
+		else if (merge)
+		{
+			cache.merge(id, written);
+		}
+		else
+		{
+			cache.put(id, written);
+		}
+	}
+
+	/**
+	 * Clears the row cache after a delete whose row ids are not known, if it deleted any row.
+	 */
+	private void clearRowCache(int numRows)
+	{
+		if (rowCache != null && numRows != 0)
+		{
+			rowCache.clear();
 		}
 	}
 
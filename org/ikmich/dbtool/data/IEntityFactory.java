@@ -1,5 +1,7 @@
 package org.ikmich.dbtool.data;
 
+import java.util.Map;
+
 import org.ikmich.dbtool.DbRecord;
 
 public interface IEntityFactory
@@ -35,6 +37,14 @@ public interface IEntityFactory
 	 */
 	public boolean create(DbRecord row);
 
+	/**
+	 * Gets a db table row by id.
+	 * 
+	 * @param id
+	 * @return The row, or null if there is none.
+	 */
+	public DbRecord getById(long id);
+
 	/**
 	 * Updates a db table row.
 	 * 
@@ -44,6 +54,17 @@ public interface IEntityFactory
 	 */
 	public boolean update(long id, DbRecord record);
 
+	/**
+	 * Creates a db table row, or updates the row with the same id if there is
+	 * one. On SQLite 3.24 or later (Android 11 / API 30) this is one
+	 * INSERT ... ON CONFLICT statement; on older versions, an UPDATE followed
+	 * by an INSERT if no row was updated, in one transaction.
+	 * 
+	 * @param row
+	 * @return
+	 */
+	public boolean save(DbRecord row);
+
 	/**
 	 * Deletes a row from the db table according to the entry id.
 	 * 
@@ -69,6 +90,40 @@ public interface IEntityFactory
 	 */
 	public boolean delete(DbRecord record);
 
+	/**
+	 * Updates many db table rows in one transaction. Records that set the same
+	 * columns share one compiled statement.
+	 * 
+	 * @param records
+	 *        The records to update, by row id.
+	 * @return The number of rows updated, or -1 if an error occurred, in
+	 *         which case no row is updated.
+	 */
+	public int updateAll(Map<Long, DbRecord> records);
+
+	/**
+	 * Deletes many rows from the db table by id, in one transaction, with
+	 * chunked <b>id IN (?,?,...)</b> statements.
+	 * 
+	 * @param ids
+	 *        The row ids.
+	 * @return The number of rows deleted, or -1 if an error occurred, in
+	 *         which case no row is deleted.
+	 */
+	public int deleteAll(long[] ids);
+
+	/**
+	 * Deletes the rows of the db table matching a where clause.
+	 * 
+	 * @param whereClause
+	 *        The where clause, without the WHERE keyword.
+	 * @param whereArgs
+	 *        The values of the '?' placeholders of the where clause. May be
+	 *        null.
+	 * @return The number of rows deleted, or -1 if an error occurred.
+	 */
+	public int deleteWhere(String whereClause, String[] whereArgs);
+
 	/**
 	 * Checks if a db table has items.
 	 * 
@@ -0,0 +1,245 @@
+package org.ikmich.dbtool.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ikmich.dbtool.DbRecord;
+
+/**
+ * LRU cache of the rows of an entity table, keyed by row id. The ids are spread over stripes, each an LRU map with its
+ * own lock, so threads reading different rows seldom wait on each other. Rows are copied into the cache and out of it.
+ * <p>
+ * Each stripe counts its writes. A row read from the database is cached with putIfUnchanged(...) only if no write
+ * touched its stripe while it was being read, so a read that overlapped a write does not cache a stale row.
+ *
+ * @author Ikenna Agbasimalo
+ */
+public class RowCache
+{
+	public static final int DEFAULT_STRIPES = 16;
+
+	private static final class Stripe extends LinkedHashMap<Long, DbRecord>
+	{
+		private static final long serialVersionUID = 1L;
+
+		final int capacity;
+		long writeCount = 0;
+		long evictionCount = 0;
+
+		Stripe(int capacity)
+		{
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, DbRecord> eldest)
+		{
+			if (size() > capacity)
+			{
+				evictionCount++;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private final Stripe[] _stripes;
+	private final int _capacity;
+	private final AtomicLong _hitCount = new AtomicLong();
+	private final AtomicLong _missCount = new AtomicLong();
+
+	public RowCache(int capacity)
+	{
+		this(capacity, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * @param capacity
+	 *        The most rows to cache.
+	 * @param stripes
+	 *        The number of stripes, rounded up to a power of two.
+	 */
+	public RowCache(int capacity, int stripes)
+	{
+		int count = 1;
+		while (count < stripes && count < capacity)
+		{
+			count <<= 1;
+		}
+		_capacity = capacity;
+		_stripes = new Stripe[count];
+		int stripeCapacity = Math.max(1, (capacity + count - 1) / count);
+		for (int i = 0; i < count; i++)
+		{
+			_stripes[i] = new Stripe(stripeCapacity);
+		}
+	}
+
+	private Stripe stripeOf(long id)
+	{
+		// Spread the bits of the id, as consecutive ids are the common case.
+		long h = id * 0x9E3779B97F4A7C15L;
+		return _stripes[(int) (h >>> 40) & (_stripes.length - 1)];
+	}
+
+	/**
+	 * Gets a cached row.
+	 *
+	 * @param id
+	 *        The row id.
+	 * @return A copy of the row, or null if it is not cached.
+	 */
+	public DbRecord get(long id)
+	{
+		Stripe stripe = stripeOf(id);
+		DbRecord row;
+		synchronized (stripe)
+		{
+			row = stripe.get(id);
+		}
+		if (row == null)
+		{
+			_missCount.incrementAndGet();
+			return null;
+		}
+		_hitCount.incrementAndGet();
+		return row.copy();
+	}
+
+	/**
+	 * Gets the write count of the stripe of a row, to pass to putIfUnchanged(...).
+	 */
+	public long stamp(long id)
+	{
+		Stripe stripe = stripeOf(id);
+		synchronized (stripe)
+		{
+			return stripe.writeCount;
+		}
+	}
+
+	/**
+	 * Caches a row read from the database, unless a write touched its stripe since stamp(id) was taken.
+	 */
+	public void putIfUnchanged(long id, DbRecord row, long stamp)
+	{
+		DbRecord copy = row.copy();
+		Stripe stripe = stripeOf(id);
+		synchronized (stripe)
+		{
+			if (stripe.writeCount == stamp)
+			{
+				stripe.put(id, copy);
+			}
+		}
+	}
+
+	/**
+	 * Caches a row as it was written to the database.
+	 */
+	public void put(long id, DbRecord row)
+	{
+		DbRecord copy = row.copy();
+		Stripe stripe = stripeOf(id);
+		synchronized (stripe)
+		{
+			stripe.writeCount++;
+			stripe.put(id, copy);
+		}
+	}
+
+	/**
+	 * Sets the fields written to a row on its cached copy, if it is cached.
+	 */
+	public void merge(long id, DbRecord changes)
+	{
+		Stripe stripe = stripeOf(id);
+		synchronized (stripe)
+		{
+			stripe.writeCount++;
+			DbRecord row = stripe.get(id);
+			if (row != null)
+			{
+				row.setAll(changes);
+			}
+		}
+	}
+
+	/**
+	 * Removes a row from the cache.
+	 */
+	public void remove(long id)
+	{
+		Stripe stripe = stripeOf(id);
+		synchronized (stripe)
+		{
+			stripe.writeCount++;
+			stripe.remove(id);
+		}
+	}
+
+	/**
+	 * Removes every row from the cache.
+	 */
+	public void clear()
+	{
+		for (Stripe stripe : _stripes)
+		{
+			synchronized (stripe)
+			{
+				stripe.writeCount++;
+				stripe.clear();
+			}
+		}
+	}
+
+	public int size()
+	{
+		int size = 0;
+		for (Stripe stripe : _stripes)
+		{
+			synchronized (stripe)
+			{
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	public int getCapacity()
+	{
+		return _capacity;
+	}
+
+	public long getHitCount()
+	{
+		return _hitCount.get();
+	}
+
+	public long getMissCount()
+	{
+		return _missCount.get();
+	}
+
+	public long getEvictionCount()
+	{
+		long count = 0;
+		for (Stripe stripe : _stripes)
+		{
+			synchronized (stripe)
+			{
+				count += stripe.evictionCount;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "RowCache[size=" + size() + "/" + _capacity + ", stripes=" + _stripes.length + ", hits="
+			+ getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+	}
+}
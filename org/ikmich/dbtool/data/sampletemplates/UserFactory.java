@@ -35,6 +35,12 @@ public class UserFactory extends EntityFactory
 	private UserFactory(Context c)
 	{
 		super(c);
+
+		/*
+		 * If users are mostly looked up by id, and only ever written
+		 * through this factory, the most recently used ones can be kept
+		 * in memory by calling enableRowCache(capacity) here.
+		 */
 	}
 
 	public static UserFactory getInstance(Context c)
@@ -71,6 +77,10 @@ public class UserFactory extends EntityFactory
 				if (dbtool.tableExists(getTable()))
 				{
 					dbtool.dropTable(getTable());
+					if (getRowCache() != null)
+					{
+						getRowCache().clear();
+					}
 				}
 			}
 
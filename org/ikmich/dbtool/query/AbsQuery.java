@@ -1,10 +1,17 @@
 package org.ikmich.dbtool.query;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.ikmich.dbtool.table.SchemaCatalog;
 
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.widget.Toast;
 
 /**
@@ -15,11 +22,12 @@ import android.widget.Toast;
 public abstract class AbsQuery implements IQuery
 {
 	protected SQLiteDatabase _sqliteDb;
+	protected StatementCache _statementCache;
+	protected SchemaCatalog _schemaCatalog;
 	protected Context _context;
 	protected String _table = null;
 	protected String _whereClause = null;
-	protected ArrayList<String> _whereClauses;
-	protected ArrayList<String> _whereConditions;
+	protected WhereClause _where;
 	protected String[] _whereArgs = null;
 	protected ContentValues _values = null;
 
@@ -46,8 +54,7 @@ public abstract class AbsQuery implements IQuery
 	{
 		_table = "";
 		_values = new ContentValues();
-		_whereClauses = new ArrayList<String>();
-		_whereConditions = new ArrayList<String>();
+		_where = new WhereClause();
 	}
 
 	public IQuery context(Context c)
@@ -56,6 +63,66 @@ public abstract class AbsQuery implements IQuery
 		return this;
 	}
 
+	/**
+	 * Sets the cache of compiled statements to use when running the query. Without one, each run compiles a fresh
+	 * statement.
+	 * 
+	 * @param statementCache
+	 *        The StatementCache for the query's database.
+	 * @return The IQuery object.
+	 */
+	public IQuery statementCache(StatementCache statementCache)
+	{
+		_statementCache = statementCache;
+		return this;
+	}
+
+	/**
+	 * Sets the schema of the query's database, used to bind the values written to each column with the type the
+	 * column stores. Without one, values are bound with their own type.
+	 * 
+	 * @param schemaCatalog
+	 *        The SchemaCatalog of the query's database.
+	 * @return The IQuery object.
+	 */
+	public IQuery schemaCatalog(SchemaCatalog schemaCatalog)
+	{
+		_schemaCatalog = schemaCatalog;
+		return this;
+	}
+
+	/**
+	 * Converts a value written to a column of the query's table to the type the column stores, if the schema is known.
+	 * 
+	 * @param column
+	 *        The column name.
+	 * @param value
+	 *        The value.
+	 * @return The value to bind.
+	 */
+	protected Object toColumnValue(String column, Object value)
+	{
+		if (_schemaCatalog == null)
+		{
+			return value;
+		}
+		SchemaCatalog.Column c = _schemaCatalog.getColumn(_table, column);
+		return c != null ? c.toColumnValue(value) : value;
+	}
+
+	/**
+	 * Sets the database the query runs on, e.g. a read-only connection borrowed from a pool.
+	 * 
+	 * @param db
+	 *        The SQLiteDatabase.
+	 * @return The IQuery object.
+	 */
+	public IQuery database(SQLiteDatabase db)
+	{
+		_sqliteDb = db;
+		return this;
+	}
+
 	public IQuery from(String table)
 	{
 		_table = table;
@@ -287,23 +354,69 @@ public abstract class AbsQuery implements IQuery
 	{
 		if (!whereClause.equals(""))
 		{
-			_whereClauses.add(whereClause);
+			_where.addRaw(whereClause);
 		}
 		return this;
 	}
 
 	public IQuery and()
 	{
-		_whereConditions.add("AND");
+		_where.and();
 		return this;
 	}
 
 	public IQuery or()
 	{
-		_whereConditions.add("OR");
+		_where.or();
 		return this;
 	}
 
+	public IQuery not()
+	{
+		_where.not();
+		return this;
+	}
+
+	public IQuery beginGroup()
+	{
+		_where.beginGroup();
+		return this;
+	}
+
+	public IQuery endGroup()
+	{
+		_where.endGroup();
+		return this;
+	}
+
+	/**
+	 * Adds a where clause containing a single '?' placeholder, along with the value to bind to it.
+	 * 
+	 * @param whereClause
+	 *        The where clause.
+	 * @param bindArg
+	 *        The value to bind to the placeholder.
+	 * @return The IQuery object.
+	 */
+	protected IQuery where(String whereClause, Object bindArg)
+	{
+		_where.add(whereClause, bindArg);
+		return this;
+	}
+
+	/**
+	 * Adds a comparison predicate. Non-null values are bound to a '?' placeholder, so the SQL text of a query stays the
+	 * same whatever the compared values are.
+	 */
+	private IQuery whereCompare(String field, String operator, Object value)
+	{
+		if (value == null)
+		{
+			return where(field + " " + operator + " NULL");
+		}
+		return where(field + " " + operator + " ?", value);
+	}
+
 	/**
 	 * Experimental
 	 * 
@@ -315,142 +428,137 @@ public abstract class AbsQuery implements IQuery
 	 */
 	public IQuery whereLike(String field, Object value)
 	{
-		String whereClause;
-		if (value instanceof String)
-		{
-			//since value is a string, add the single quotes to the query string..
-			whereClause = field + " LIKE '" + value + "'";
-		}
-		else
-		{
-			whereClause = field + " LIKE " + value;
-		}
-		where(whereClause);
-		return this;
+		return whereCompare(field, "LIKE", value);
 	}
 
 	public IQuery whereEquals(String field, Object value)
 	{
-		String whereClause;
-
 		if (value == null)
 		{
-			whereClause = field + " is null";
+			return where(field + " is null");
 		}
-		else if (value instanceof String)
-		{
-			whereClause = field + " = '" + value + "' ";
-		}
-		else
-		{
-			whereClause = field + " = " + value;
-		}
-
-		where(whereClause);
-		return this;
+		return whereCompare(field, "=", value);
 	}
 
 	public IQuery whereNotEquals(String field, Object value)
 	{
-		String whereClause;
 		if (value == null)
 		{
-			whereClause = field + " is not null";
-		}
-		else if (value instanceof String)
-		{
-			whereClause = field + " != '" + value + "' ";
+			return where(field + " is not null");
 		}
-		else
-		{
-			whereClause = field + " != " + value;
-		}
-
-		where(whereClause);
-		return this;
+		return whereCompare(field, "!=", value);
 	}
 
 	public IQuery whereLessThan(String field, Object value)
 	{
-		String whereClause;
-		if (value instanceof String)
-		{
-			whereClause = field + "<'" + value + "'";
-		}
-		else
-		{
-			whereClause = field + "<" + value;
-		}
-		where(whereClause);
-		return this;
+		return whereCompare(field, "<", value);
 	}
 
 	public IQuery whereGreaterThan(String field, Object value)
 	{
-		String whereClause;
-		if (value instanceof String)
-		{
-			whereClause = field + ">'" + value + "'";
-		}
-		else
-		{
-			whereClause = field + ">" + value;
-		}
-		where(whereClause);
-		return this;
+		return whereCompare(field, ">", value);
 	}
 
 	public IQuery whereGreaterThanOrEquals(String field, Object value)
 	{
-		String whereClause;
-		if (value instanceof String)
-		{
-			whereClause = field + ">='" + value + "'";
-		}
-		else
-		{
-			whereClause = field + ">=" + value;
-		}
-		where(whereClause);
-		return this;
+		return whereCompare(field, ">=", value);
 	}
 
 	public IQuery whereLessThanOrEquals(String field, Object value)
 	{
-		String whereClause;
-		if (value instanceof String)
+		return whereCompare(field, "<=", value);
+	}
+
+	public IQuery whereIn(String field, Object[] values)
+	{
+		if (values.length == 0)
 		{
-			whereClause = field + "<='" + value + "'";
+			return where("0");
 		}
-		else
+
+		StringBuilder sb = new StringBuilder(field.length() + 6 + values.length * 2);
+		sb.append(field).append(" IN (");
+		for (int i = 0; i < values.length; i++)
 		{
-			whereClause = field + "<=" + value;
+			sb.append(i > 0 ? ",?" : "?");
 		}
-		where(whereClause);
+		sb.append(')');
+
+		_where.add(sb.toString(), values);
 		return this;
 	}
 
 	public IQuery whereArgs(String[] whereArgs)
 	{
 		_whereArgs = whereArgs;
+		_where.rawArgs(whereArgs);
 		return this;
 	}
 
-	protected void buildWhereClause()
+	/**
+	 * Gets the args to bind to the where clause, in the order of their placeholders: the explicitly supplied where
+	 * args go to the raw where clauses, and the values of the where* helper methods to their own predicates.
+	 * 
+	 * @return The where args, or null if there are none.
+	 */
+	protected String[] buildWhereArgs()
+	{
+		ArrayList<Object> bindArgs = new ArrayList<Object>(_where.getBindArgCount());
+		_where.collectBindArgs(bindArgs);
+		return BindArgs.toStringArray(null, bindArgs);
+	}
+
+	/**
+	 * Adds the where args to a list of bind values, in the order of their placeholders: the explicitly supplied where
+	 * args for the raw where clauses, and the values of the where* helper methods with their own types.
+	 * 
+	 * @param bindArgs
+	 *        The list to add the where args to.
+	 */
+	protected void addWhereArgs(List<Object> bindArgs)
+	{
+		_where.collectBindArgs(bindArgs);
+	}
+
+	/**
+	 * Gets a compiled statement for the SQL, from the statement cache if one is set.
+	 * 
+	 * @param sql
+	 *        The SQL text.
+	 * @return The compiled statement. Hand it back with releaseStatement() when done.
+	 */
+	protected SQLiteStatement acquireStatement(String sql)
 	{
-		_whereClause = "";
-		int index = 0;
-		for (String whereClause : _whereClauses)
+		if (_statementCache != null)
 		{
-			_whereClause += whereClause;
-			if (_whereClauses.indexOf(whereClause) < (_whereClauses.size() - 1))
-			{
-				_whereClause += " " + _whereConditions.get(index) + " ";
-			}
-			index++;
+			return _statementCache.acquire(sql);
+		}
+		return _sqliteDb.compileStatement(sql);
+	}
+
+	/**
+	 * Hands a statement obtained with acquireStatement() back to the statement cache, or closes it if there is none.
+	 * 
+	 * @param sql
+	 *        The SQL text the statement was acquired with.
+	 * @param statement
+	 *        The statement.
+	 */
+	protected void releaseStatement(String sql, SQLiteStatement statement)
+	{
+		if (_statementCache != null)
+		{
+			_statementCache.release(sql, statement);
 		}
-		// remove trailing conditions...
-		_whereClause = _whereClause.replaceFirst("(\\s+)((and|AND)|(or|OR)|(like|LIKE))(\\s+)$", "");
+		else
+		{
+			statement.close();
+		}
+	}
+
+	protected void buildWhereClause()
+	{
+		_whereClause = _where.render();
 	}
 
 	/**
@@ -540,11 +648,32 @@ public abstract class AbsQuery implements IQuery
 		return this;
 	}
 
+	/**
+	 * Compiles the query into SQL text with '?' placeholders. Implemented in the subclasses.
+	 */
+	public abstract String compile(List<Object> bindArgs);
+
 	/**
 	 * Runs the query. Implemented in the subclasses.
 	 */
 	public abstract Object run();
 
+	/**
+	 * Runs the query on the given executor, and returns at once.
+	 */
+	public <T> Future<T> runAsync(ExecutorService executor)
+	{
+		return executor.submit(new Callable<T>()
+		{
+			@SuppressWarnings("unchecked")
+			@Override
+			public T call()
+			{
+				return (T) run();
+			}
+		});
+	}
+
 	/**
 	 * Resets the state for a new query chain to be built and run.
 	 */
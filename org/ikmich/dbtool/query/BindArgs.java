@@ -0,0 +1,121 @@
+package org.ikmich.dbtool.query;
+
+import java.util.List;
+
+import android.database.sqlite.SQLiteProgram;
+
+/**
+ * Helper methods for working with the bind values of a query's '?' placeholders.
+ *
+ * @author Ikmich
+ */
+public final class BindArgs
+{
+	private BindArgs()
+	{}
+
+	/**
+	 * Converts a typed bind value to the string form expected by the SQLiteDatabase query methods.
+	 *
+	 * @param value
+	 *        The bind value.
+	 * @return The string form of the value.
+	 */
+	public static String toString(Object value)
+	{
+		if (value instanceof Boolean)
+		{
+			return ((Boolean) value).booleanValue() ? "1" : "0";
+		}
+		return String.valueOf(value);
+	}
+
+	/**
+	 * Merges explicitly supplied where args with the bind values collected by the where* helper methods. The explicit
+	 * args come first, as they belong to the raw where clauses.
+	 *
+	 * @param whereArgs
+	 *        The explicitly supplied where args. May be null.
+	 * @param bindArgs
+	 *        The bind values collected by the where* helpers.
+	 * @return The merged args, or null if there are none.
+	 */
+	public static String[] toStringArray(String[] whereArgs, List<Object> bindArgs)
+	{
+		int explicitCount = whereArgs == null ? 0 : whereArgs.length;
+		int total = explicitCount + bindArgs.size();
+		if (total == 0)
+		{
+			return null;
+		}
+
+		String[] args = new String[total];
+		if (explicitCount > 0)
+		{
+			System.arraycopy(whereArgs, 0, args, 0, explicitCount);
+		}
+		for (int i = 0; i < bindArgs.size(); i++)
+		{
+			args[explicitCount + i] = toString(bindArgs.get(i));
+		}
+		return args;
+	}
+
+	/**
+	 * Binds a typed value to a compiled statement, picking the bind method that matches the value's type.
+	 *
+	 * @param program
+	 *        The compiled statement.
+	 * @param index
+	 *        The 1-based index of the placeholder.
+	 * @param value
+	 *        The value to bind.
+	 */
+	public static void bind(SQLiteProgram program, int index, Object value)
+	{
+		if (value == null)
+		{
+			program.bindNull(index);
+		}
+		else if (value instanceof String)
+		{
+			program.bindString(index, (String) value);
+		}
+		else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+		{
+			program.bindLong(index, ((Number) value).longValue());
+		}
+		else if (value instanceof Double || value instanceof Float)
+		{
+			program.bindDouble(index, ((Number) value).doubleValue());
+		}
+		else if (value instanceof Boolean)
+		{
+			program.bindLong(index, ((Boolean) value).booleanValue() ? 1 : 0);
+		}
+		else if (value instanceof byte[])
+		{
+			program.bindBlob(index, (byte[]) value);
+		}
+		else
+		{
+			program.bindString(index, value.toString());
+		}
+	}
+
+	/**
+	 * Binds a list of typed values to a compiled statement, starting at the first placeholder.
+	 *
+	 * @param program
+	 *        The compiled statement.
+	 * @param values
+	 *        The values to bind, in placeholder order.
+	 */
+	public static void bindAll(SQLiteProgram program, List<Object> values)
+	{
+		for (int i = 0; i < values.size(); i++)
+		{
+			bind(program, i + 1, values.get(i));
+		}
+	}
+}
@@ -1,7 +1,11 @@
 package org.ikmich.dbtool.query;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 public class DeleteQuery extends AbsQuery
 {
@@ -22,11 +26,35 @@ public class DeleteQuery extends AbsQuery
 		return this;
 	}
 
-	public Integer run()
+	/**
+	 * Compiles the query into a 'DELETE' statement.
+	 */
+	public String compile(List<Object> bindArgs)
 	{
 		buildWhereClause();
-		int numRows = _sqliteDb.delete(_table, _whereClause, _whereArgs);
-		
+		addWhereArgs(bindArgs);
+
+		return _whereClause.length() > 0 ? "DELETE FROM " + _table + " WHERE " + _whereClause : "DELETE FROM "
+			+ _table;
+	}
+
+	public Integer run()
+	{
+		ArrayList<Object> bindArgs = new ArrayList<Object>();
+		String sql = compile(bindArgs);
+
+		SQLiteStatement statement = acquireStatement(sql);
+		int numRows;
+		try
+		{
+			BindArgs.bindAll(statement, bindArgs);
+			numRows = statement.executeUpdateDelete();
+		}
+		finally
+		{
+			releaseStatement(sql, statement);
+		}
+
 		resetState();
 		return numRows;
 	}
@@ -34,8 +62,7 @@ public class DeleteQuery extends AbsQuery
 	void resetState()
 	{
 		_table = "";
-		_whereClauses.clear();
-		_whereConditions.clear();
+		_where.clear();
 		_whereClause = "";
 	}
 
@@ -1,5 +1,9 @@
 package org.ikmich.dbtool.query;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import android.content.ContentValues;
 import android.content.Context;
 
@@ -305,7 +309,22 @@ public interface IQuery
 	public IQuery whereLessThanOrEquals(String field, Object value);
 
 	/**
-	 * Sets the arguments for a where clause.
+	 * Sets an IN comparison for a where clause for a db query, with one bind
+	 * slot per value: <b>field IN (?,?,...)</b>. An empty set of values
+	 * matches no row.
+	 * 
+	 * @param field
+	 *        <span>The field name.</span>
+	 * @param values
+	 *        <span>The values to compare with.</span>
+	 * @return The IQuery object.
+	 */
+	public IQuery whereIn(String field, Object[] values);
+
+	/**
+	 * Sets the arguments for the '?' placeholders of the raw where clauses set with where(...), in order. Each value is
+	 * bound at its placeholder's position in the rendered clause, among the values of the where* comparison methods,
+	 * which add their own placeholders.
 	 * 
 	 * @param whereArgs
 	 *        <span>The where clause arguments array.</span>
@@ -327,6 +346,27 @@ public interface IQuery
 	 */
 	public IQuery or();
 
+	/**
+	 * Negates the next condition or group of a where clause.
+	 * 
+	 * @return The IQuery object.
+	 */
+	public IQuery not();
+
+	/**
+	 * Opens a parenthesized group of conditions in a where clause, to set their precedence explicitly.
+	 * 
+	 * @return The IQuery object.
+	 */
+	public IQuery beginGroup();
+
+	/**
+	 * Closes the group of conditions opened by the last beginGroup() call.
+	 * 
+	 * @return The IQuery object.
+	 */
+	public IQuery endGroup();
+
 	/**
 	 * Indicates a 'distinct' qualifier for a query statement.
 	 * 
@@ -372,10 +412,29 @@ public interface IQuery
 
 	public IQuery limit(String limit);
 
+	/**
+	 * Compiles the query into SQL text with '?' placeholders, without running it.
+	 * 
+	 * @param bindArgs
+	 *        <span>The list to add the values to bind to the placeholders to, in placeholder order.</span>
+	 * @return The SQL text.
+	 */
+	public String compile(List<Object> bindArgs);
+
 	/**
 	 * Runs the query.
 	 * 
 	 * @return The IQuery object.
 	 */
 	public Object run();
+
+	/**
+	 * Runs the query on the given executor, and returns at once. The query must not be changed until the Future is
+	 * done.
+	 * 
+	 * @param executor
+	 *        <span>The executor to run the query on.</span>
+	 * @return The Future of the result of run().
+	 */
+	public <T> Future<T> runAsync(ExecutorService executor);
 }
@@ -1,19 +1,49 @@
 package org.ikmich.dbtool.query;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import org.ikmich.dbtool.DbRecord;
 import org.ikmich.dbtool.DbRecordSet;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 public class InsertQuery extends AbsQuery
 {
+	/**
+	 * The default number of rows inserted per transaction by runAll(). 0 means all the rows are inserted in one
+	 * transaction.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 0;
+
+	/**
+	 * The most '?' placeholders one statement may have, SQLITE_MAX_VARIABLE_NUMBER on SQLite builds before 3.32.
+	 */
+	public static final int MAX_VARIABLE_NUMBER = 999;
+
+	/**
+	 * The most rows packed into one multi-VALUES statement, whatever the column count.
+	 */
+	public static final int MAX_ROWS_PER_STATEMENT = 500;
+
+	private static final String INSERT_SAVEPOINT = "dbtool_insert";
 
 	private String _nullColumnHack = null;
 	private DbRecordSet _rows;
 	private DbRecord _row;
 	private boolean _insertingMultipleRows = false;
+	private int _batchSize = DEFAULT_BATCH_SIZE;
+	private boolean _multiRowValues = false;
+	private int _conflictAlgorithm = SQLiteDatabase.CONFLICT_NONE;
+
+	private static final String[] CONFLICT_VALUES = new String[] {
+		"", " OR ROLLBACK", " OR ABORT", " OR FAIL", " OR IGNORE", " OR REPLACE"
+	};
 
 	public InsertQuery(SQLiteDatabase db)
 	{
@@ -54,6 +84,84 @@ public class InsertQuery extends AbsQuery
 		return this.recordSet(rows);
 	}
 
+	/**
+	 * Sets the conflict algorithm of the insert, with the same meaning as in
+	 * SQLiteDatabase.insertWithOnConflict(...): the statement becomes <b>INSERT OR IGNORE</b>, <b>INSERT OR
+	 * REPLACE</b>, and so on.
+	 * 
+	 * @param conflictAlgorithm
+	 *        One of the SQLiteDatabase.CONFLICT_* constants.
+	 */
+	public InsertQuery conflictAlgorithm(int conflictAlgorithm)
+	{
+		if (conflictAlgorithm < 0 || conflictAlgorithm >= CONFLICT_VALUES.length)
+		{
+			throw new IllegalArgumentException("Unknown conflict algorithm: " + conflictAlgorithm);
+		}
+		_conflictAlgorithm = conflictAlgorithm;
+		return this;
+	}
+
+	/**
+	 * Sets the number of rows inserted per transaction when a record set is inserted. The transaction is committed
+	 * and a new one started after each batch, which bounds the size of the journal on very large imports. Ignored
+	 * when the insert runs within a transaction of the caller, which commits all the rows at once.
+	 * 
+	 * @param batchSize
+	 *        The number of rows per transaction, or 0 to insert all the rows in one transaction.
+	 */
+	public InsertQuery batchSize(int batchSize)
+	{
+		if (batchSize < 0)
+		{
+			throw new IllegalArgumentException("Batch size must not be negative.");
+		}
+		_batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * Sets whether a record set is inserted with multi-VALUES statements, <b>INSERT INTO t (a,b) VALUES
+	 * (?,?),(?,?),...</b>, packing as many rows into each statement as the '?' placeholder limit allows (see
+	 * rowsPerStatement()). This runs fewer statements than rebinding a single row statement, which matters most for
+	 * narrow tables.
+	 * <p>
+	 * SQLite only reports the row id of the last row inserted by a statement, so in this mode runAll() returns one row
+	 * id per statement rather than one per row.
+	 * 
+	 * @param multiRowValues
+	 *        <b>true</b> to use multi-VALUES statements; <b>false</b> (the default) for one statement per row.
+	 */
+	public InsertQuery multiRowValues(boolean multiRowValues)
+	{
+		_multiRowValues = multiRowValues;
+		return this;
+	}
+
+	/**
+	 * Gets the number of rows packed into one multi-VALUES statement for a row with the given number of columns.
+	 * 
+	 * @param columnCount
+	 *        The number of columns of the rows.
+	 * @return The number of rows per statement.
+	 */
+	public static int rowsPerStatement(int columnCount)
+	{
+		if (columnCount <= 0)
+		{
+			return 1;
+		}
+		return Math.max(1, Math.min(MAX_VARIABLE_NUMBER / columnCount, MAX_ROWS_PER_STATEMENT));
+	}
+
+	/**
+	 * Checks whether a record set, rather than a single record, is to be inserted.
+	 */
+	public boolean isInsertingMultipleRows()
+	{
+		return _insertingMultipleRows;
+	}
+
 	public InsertQuery record(DbRecord row)
 	{
 		_row = row;
@@ -66,32 +174,432 @@ public class InsertQuery extends AbsQuery
 		return this.record(row);
 	}
 
+	/**
+	 * Runs the insert.
+	 * 
+	 * @return The row id of the inserted row, or -1 if an error occurred. When a record set is inserted, the row id
+	 *         of its last row.
+	 */
 	public Long run()
 	{
-		long rowId = 0;
 		if (_insertingMultipleRows)
 		{
+			long[] rowIds = runAll();
+			return rowIds.length > 0 ? rowIds[rowIds.length - 1] : 0L;
+		}
+
+		long rowId = insert(_values);
+
+		resetState();
+		return rowId;
+	}
+
+	/**
+	 * Runs the insert, returning the row id of every inserted row. A record set is inserted in one transaction (or
+	 * one per batch, see batchSize()), through one compiled statement rebound for each row. Rows with a different set
+	 * of columns than the row before them switch to the statement for their columns. Within a transaction of the
+	 * caller, the rows are inserted in a SAVEPOINT of it, so an insert that throws rolls back only its own rows.
+	 * <p>
+	 * As with SQLiteDatabase.insert(...), a row that fails to insert gets a row id of -1 and does not stop the rest.
+	 * <p>
+	 * With multiRowValues(true), the rows are inserted by multi-VALUES statements instead, and the result holds the
+	 * row id of the last row of each statement (-1 if the statement failed, which leaves out all its rows).
+	 * 
+	 * @return The row ids, in the order of the rows.
+	 */
+	public long[] runAll()
+	{
+		if (!_insertingMultipleRows)
+		{
+			return new long[] {
+				run()
+			};
+		}
+		if (_multiRowValues)
+		{
+			return runAllMultiRow();
+		}
+
+		long[] rowIds = new long[_rows.size()];
+		String[] columns = null;
+		String sql = null;
+		SQLiteStatement statement = null;
+
+		boolean ownTransaction = beginInsert();
+		boolean successful = false;
+		try
+		{
+			int i = 0;
+			int inBatch = 0;
 			for (DbRecord row : _rows)
 			{
-				_values = row.toContentValues();
-				//rowId = _sqliteDb.insert(_table, _nullColumnHack, _values);
+				ContentValues values = row.toContentValues();
+				if (columns == null || !hasColumns(values, columns))
+				{
+					if (statement != null)
+					{
+						releaseStatement(sql, statement);
+						statement = null;
+					}
+					columns = values.keySet().toArray(new String[values.size()]);
+					sql = compileInsert(columns);
+					try
+					{
+						statement = acquireStatement(sql);
+					}
+					catch (SQLException ex)
+					{
+						// An unknown table or column: every row with these columns fails.
+						statement = null;
+					}
+				}
+
+				if (statement == null)
+				{
+					rowIds[i] = -1;
+				}
+				else
+				{
+					statement.clearBindings();
+					for (int j = 0; j < columns.length; j++)
+					{
+						BindArgs.bind(statement, j + 1, toColumnValue(columns[j], values.get(columns[j])));
+					}
+					try
+					{
+						rowIds[i] = statement.executeInsert();
+					}
+					catch (SQLException ex)
+					{
+						rowIds[i] = -1;
+					}
+				}
+				i++;
+
+				if (ownTransaction && _batchSize > 0 && ++inBatch == _batchSize && i < rowIds.length)
+				{
+					commitBatch();
+					inBatch = 0;
+				}
+			}
+			successful = true;
+		}
+		finally
+		{
+			if (statement != null)
+			{
+				releaseStatement(sql, statement);
 			}
+			endInsert(ownTransaction, successful);
+			resetState();
 		}
-		//		else
-		//		{
-		//			rowId = _sqliteDb.insert(_table, _nullColumnHack, _values);
-		//		}
+		return rowIds;
+	}
 
-		rowId = _sqliteDb.insert(_table, _nullColumnHack, _values);
+	private long[] runAllMultiRow()
+	{
+		long[] rowIds = new long[_rows.size()];
+		int statementCount = 0;
+		String[] columns = null;
+		ContentValues[] pending = null;
+		int pendingCount = 0;
 
-		resetState();
-		return rowId;
+		boolean ownTransaction = beginInsert();
+		boolean successful = false;
+		try
+		{
+			int inBatch = 0;
+			for (DbRecord row : _rows)
+			{
+				ContentValues values = row.toContentValues();
+				if (columns == null || !hasColumns(values, columns))
+				{
+					if (pendingCount > 0)
+					{
+						rowIds[statementCount++] = insertRows(columns, pending, pendingCount);
+						pendingCount = 0;
+					}
+					columns = values.keySet().toArray(new String[values.size()]);
+					pending = new ContentValues[rowsPerStatement(columns.length)];
+				}
+
+				pending[pendingCount++] = values;
+				if (pendingCount == pending.length)
+				{
+					rowIds[statementCount++] = insertRows(columns, pending, pendingCount);
+					pendingCount = 0;
+				}
+
+				// Batches are committed on statement boundaries.
+				if (ownTransaction && _batchSize > 0 && ++inBatch >= _batchSize && pendingCount == 0)
+				{
+					commitBatch();
+					inBatch = 0;
+				}
+			}
+			if (pendingCount > 0)
+			{
+				rowIds[statementCount++] = insertRows(columns, pending, pendingCount);
+			}
+			successful = true;
+		}
+		finally
+		{
+			endInsert(ownTransaction, successful);
+			resetState();
+		}
+
+		long[] result = new long[statementCount];
+		System.arraycopy(rowIds, 0, result, 0, statementCount);
+		return result;
+	}
+
+	/**
+	 * Inserts rows with the same columns through one multi-VALUES statement.
+	 * 
+	 * @return The row id of the last inserted row, or -1 if an error occurred.
+	 */
+	private long insertRows(String[] columns, ContentValues[] rows, int rowCount)
+	{
+		String sql = compileInsert(columns, rowCount);
+		SQLiteStatement statement = null;
+		try
+		{
+			statement = acquireStatement(sql);
+			statement.clearBindings();
+			int index = 1;
+			for (int r = 0; r < rowCount; r++)
+			{
+				for (int j = 0; j < columns.length; j++)
+				{
+					BindArgs.bind(statement, index++, toColumnValue(columns[j], rows[r].get(columns[j])));
+				}
+			}
+			return statement.executeInsert();
+		}
+		catch (SQLException ex)
+		{
+			return -1;
+		}
+		finally
+		{
+			if (statement != null)
+			{
+				releaseStatement(sql, statement);
+			}
+		}
+	}
+
+	/**
+	 * Starts the transaction of a record set insert. Within a transaction of the caller, the insert runs in a
+	 * SAVEPOINT instead: a nested beginTransaction() that fails marks the caller's transaction as failed, so its
+	 * commit would silently roll back all of its work.
+	 * 
+	 * @return <b>true</b> if a transaction was started; <b>false</b> if a SAVEPOINT was.
+	 */
+	private boolean beginInsert()
+	{
+		if (_sqliteDb.inTransaction())
+		{
+			_sqliteDb.execSQL("SAVEPOINT " + INSERT_SAVEPOINT);
+			return false;
+		}
+		_sqliteDb.beginTransaction();
+		return true;
+	}
+
+	/**
+	 * Ends what beginInsert() started: commits it if the insert completed, or rolls it back.
+	 */
+	private void endInsert(boolean ownTransaction, boolean successful)
+	{
+		if (ownTransaction)
+		{
+			if (successful)
+			{
+				_sqliteDb.setTransactionSuccessful();
+			}
+			_sqliteDb.endTransaction();
+			return;
+		}
+		if (!successful)
+		{
+			// The leading ';' keeps Android (API 16-27) from taking it for a plain ROLLBACK of the caller's transaction.
+			_sqliteDb.execSQL(";ROLLBACK TO " + INSERT_SAVEPOINT);
+		}
+		_sqliteDb.execSQL("RELEASE " + INSERT_SAVEPOINT);
+	}
+
+	/**
+	 * Commits the rows inserted so far and starts a new transaction.
+	 */
+	private void commitBatch()
+	{
+		_sqliteDb.setTransactionSuccessful();
+		_sqliteDb.endTransaction();
+		_sqliteDb.beginTransaction();
+	}
+
+	/**
+	 * Checks whether a row has exactly the given columns.
+	 */
+	private static boolean hasColumns(ContentValues values, String[] columns)
+	{
+		if (values.size() != columns.length)
+		{
+			return false;
+		}
+		for (String column : columns)
+		{
+			if (!values.containsKey(column))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compiles the query into an 'INSERT' statement for the values set on it.
+	 */
+	public String compile(List<Object> bindArgs)
+	{
+		return compileInsert(_values, bindArgs);
+	}
+
+	/**
+	 * Builds the 'INSERT' statement for one row, adding the column values of the row to bindArgs.
+	 * 
+	 * @param values
+	 *        The column values of the row.
+	 * @param bindArgs
+	 *        The list to add the values to bind to.
+	 * @return The SQL text.
+	 */
+	protected String compileInsert(ContentValues values, List<Object> bindArgs)
+	{
+		int size = (values != null) ? values.size() : 0;
+
+		String[] columns = new String[size];
+		if (size > 0)
+		{
+			int i = 0;
+			for (Map.Entry<String, Object> entry : values.valueSet())
+			{
+				columns[i++] = entry.getKey();
+				bindArgs.add(toColumnValue(entry.getKey(), entry.getValue()));
+			}
+		}
+		return compileInsert(columns);
+	}
+
+	/**
+	 * Builds the 'INSERT' statement for a row with the given columns, with one '?' placeholder per column.
+	 * 
+	 * @param columns
+	 *        The column names, in placeholder order.
+	 * @return The SQL text.
+	 */
+	protected String compileInsert(String[] columns)
+	{
+		return compileInsert(columns, 1);
+	}
+
+	/**
+	 * Builds the 'INSERT' statement for rowCount rows with the given columns, with one '?' placeholder per column of
+	 * each row: <b>INSERT INTO t (a,b) VALUES (?,?),(?,?),...</b>.
+	 * 
+	 * @param columns
+	 *        The column names, in placeholder order.
+	 * @param rowCount
+	 *        The number of rows.
+	 * @return The SQL text.
+	 */
+	protected String compileInsert(String[] columns, int rowCount)
+	{
+		StringBuilder sql = new StringBuilder(48 + _table.length() + columns.length * (12 + 2 * rowCount));
+		sql.append("INSERT").append(CONFLICT_VALUES[_conflictAlgorithm]).append(" INTO ").append(_table).append(" (");
+		if (columns.length > 0)
+		{
+			for (int i = 0; i < columns.length; i++)
+			{
+				sql.append(i > 0 ? "," : "").append(columns[i]);
+			}
+			sql.append(") VALUES ");
+			for (int r = 0; r < rowCount; r++)
+			{
+				sql.append(r > 0 ? ",(" : "(");
+				for (int i = 0; i < columns.length; i++)
+				{
+					sql.append(i > 0 ? ",?" : "?");
+				}
+				sql.append(')');
+			}
+		}
+		else
+		{
+			sql.append(_nullColumnHack).append(") VALUES (NULL)");
+		}
+		appendConflictClause(sql, columns);
+
+		return sql.toString();
+	}
+
+	/**
+	 * Appends the clause that follows the VALUES list of the statement. An insert has none; UpsertQuery adds its ON
+	 * CONFLICT clause here.
+	 * 
+	 * @param sql
+	 *        The statement being built.
+	 * @param columns
+	 *        The inserted columns.
+	 */
+	protected void appendConflictClause(StringBuilder sql, String[] columns)
+	{}
+
+	/**
+	 * Inserts one row through a compiled 'INSERT' statement.
+	 * 
+	 * @param values
+	 *        The column values of the row.
+	 * @return The row id of the inserted row, or -1 if an error occurred.
+	 */
+	protected long insert(ContentValues values)
+	{
+		ArrayList<Object> bindArgs = new ArrayList<Object>();
+		String sql = compileInsert(values, bindArgs);
+
+		SQLiteStatement statement = null;
+		try
+		{
+			// Compiling reports an unknown table or column, so it is within the try too.
+			statement = acquireStatement(sql);
+			BindArgs.bindAll(statement, bindArgs);
+			return statement.executeInsert();
+		}
+		catch (SQLException ex)
+		{
+			// Same outcome as SQLiteDatabase.insert(...) on error.
+			return -1;
+		}
+		finally
+		{
+			if (statement != null)
+			{
+				releaseStatement(sql, statement);
+			}
+		}
 	}
 
 	void resetState()
 	{
 		_table = "";
 		_values.clear();
+		_insertingMultipleRows = false;
+		_multiRowValues = false;
+		_batchSize = DEFAULT_BATCH_SIZE;
+		_conflictAlgorithm = SQLiteDatabase.CONFLICT_NONE;
+		_rows = new DbRecordSet();
 	}
 
 }
\ No newline at end of file
@@ -1,7 +1,13 @@
 package org.ikmich.dbtool.query;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.database.Cursor;
 
 public class SelectQuery extends AbsQuery
@@ -25,44 +31,164 @@ public class SelectQuery extends AbsQuery
 
 	public SelectQuery selectionArgs(String[] selArgs)
 	{
-		_whereArgs = selArgs;
+		whereArgs(selArgs);
 		return this;
 	}
 
+	/**
+	 * Compiles the query into a 'SELECT' statement.
+	 */
+	public String compile(List<Object> bindArgs)
+	{
+		buildWhereClause();
+		addWhereArgs(bindArgs);
+
+		return SQLiteQueryBuilder.buildQueryString(_distinct, _table, _columns, _whereClause, _groupBy, _having,
+			_orderBy, _limit);
+	}
+
 	public Cursor run()
 	{
 		Cursor c;
 		buildWhereClause();
+		String[] whereArgs = buildWhereArgs();
 
 		//..determine which overload to use..
 		if (_distinct && _limit != null)
 		{
 			//..use method with both a 'distinct' and a 'limit' argument
-			c = _sqliteDb.query(_distinct, _table, _columns, _whereClause, _whereArgs, _groupBy, _having,
+			c = _sqliteDb.query(_distinct, _table, _columns, _whereClause, whereArgs, _groupBy, _having,
 				_orderBy, _limit);
 		}
 		else if (_limit != null)
 		{
 			//..use method with a 'limit' argument, and without a distinct argument
-			c = _sqliteDb.query(_table, _columns, _whereClause, _whereArgs, _groupBy, _having, _orderBy,
+			c = _sqliteDb.query(_table, _columns, _whereClause, whereArgs, _groupBy, _having, _orderBy,
 				_limit);
 		}
 		else
 		{
 			//..use method without a 'limit' and a 'distinct' argument
-			c = _sqliteDb.query(_table, _columns, _whereClause, _whereArgs, _groupBy, _having, _orderBy);
+			c = _sqliteDb.query(_table, _columns, _whereClause, whereArgs, _groupBy, _having, _orderBy);
 		}
 
 		resetState();
 		return c;
 	}
 
+	/**
+	 * Runs the query through a compiled statement and returns the first column of the first row as a long, without
+	 * opening a Cursor. A NULL value is returned as 0.
+	 * 
+	 * @return The value, or null if the query returns no rows.
+	 */
+	public Long runForLong()
+	{
+		ArrayList<Object> bindArgs = new ArrayList<Object>(_where.getBindArgCount());
+		return queryForLong(compile(bindArgs), bindArgs);
+	}
+
+	/**
+	 * Checks whether the query matches any row, with <b>SELECT EXISTS(SELECT 1 FROM ... LIMIT 1)</b>. SQLite stops at
+	 * the first matching row, and no row data is read.
+	 * 
+	 * @return <b>true</b> if a row matches; <b>false</b> otherwise.
+	 */
+	public boolean runExists()
+	{
+		ArrayList<Object> bindArgs = new ArrayList<Object>(_where.getBindArgCount());
+		buildWhereClause();
+		addWhereArgs(bindArgs);
+
+		String sql = "SELECT EXISTS(" + SQLiteQueryBuilder.buildQueryString(false, _table, new String[] {
+			"1"
+		}, _whereClause, _groupBy, _having, null, "1") + ")";
+
+		Long exists = queryForLong(sql, bindArgs);
+		return exists != null && exists.longValue() != 0;
+	}
+
+	/**
+	 * Counts the rows the query matches, with <b>SELECT COUNT(*)</b>. The selected columns are ignored. A query with
+	 * DISTINCT, GROUP BY or LIMIT is counted as a subquery, so the count is that of the rows it would return.
+	 * 
+	 * @return The number of rows.
+	 */
+	public long runCount()
+	{
+		ArrayList<Object> bindArgs = new ArrayList<Object>(_where.getBindArgCount());
+		String sql;
+		if (_distinct || _groupBy != null || _limit != null)
+		{
+			sql = "SELECT COUNT(*) FROM (" + compile(bindArgs) + ")";
+		}
+		else
+		{
+			buildWhereClause();
+			addWhereArgs(bindArgs);
+			sql = SQLiteQueryBuilder.buildQueryString(false, _table, new String[] {
+				"COUNT(*)"
+			}, _whereClause, null, null, null, null);
+		}
+
+		Long count = queryForLong(sql, bindArgs);
+		return count == null ? 0 : count.longValue();
+	}
+
+	private Long queryForLong(String sql, List<Object> bindArgs)
+	{
+		SQLiteStatement statement = acquireStatement(sql);
+		try
+		{
+			BindArgs.bindAll(statement, bindArgs);
+			return statement.simpleQueryForLong();
+		}
+		catch (SQLiteDoneException ex)
+		{
+			// No rows.
+			return null;
+		}
+		finally
+		{
+			releaseStatement(sql, statement);
+			resetState();
+		}
+	}
+
+	/**
+	 * Runs the query through a compiled statement and returns the first column of the first row as a String, without
+	 * opening a Cursor.
+	 * 
+	 * @return The value, or null if the query returns no rows or the value is NULL.
+	 */
+	public String runForString()
+	{
+		ArrayList<Object> bindArgs = new ArrayList<Object>(_where.getBindArgCount());
+		String sql = compile(bindArgs);
+
+		SQLiteStatement statement = acquireStatement(sql);
+		try
+		{
+			BindArgs.bindAll(statement, bindArgs);
+			return statement.simpleQueryForString();
+		}
+		catch (SQLiteDoneException ex)
+		{
+			// No rows.
+			return null;
+		}
+		finally
+		{
+			releaseStatement(sql, statement);
+			resetState();
+		}
+	}
+
 	void resetState()
 	{
 		_table = "";
 		_columns = null;
-		_whereClauses.clear();
-		_whereConditions.clear();
+		_where.clear();
 		_whereClause = "";
 	}
 
@@ -0,0 +1,275 @@
+package org.ikmich.dbtool.query;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * LRU cache of compiled SQLiteStatements for one database connection, keyed by the normalized SQL text of the
+ * statement. A statement is checked out of the cache with acquire() and handed back with release(), so a statement is
+ * never used by two threads at once and is never closed while in use. A statement checked out before clear() or
+ * setDatabase() is closed when it is handed back, rather than cached, as it was compiled for the previous connection.
+ *
+ * @author Ikmich
+ */
+public class StatementCache
+{
+	public static final int DEFAULT_CAPACITY = 25;
+
+	private SQLiteDatabase _db;
+	private int _capacity;
+	private final LinkedHashMap<String, SQLiteStatement> _statements;
+	private final IdentityHashMap<SQLiteStatement, Long> _checkedOut = new IdentityHashMap<SQLiteStatement, Long>();
+	private long _generation = 0;
+
+	private long _hitCount = 0;
+	private long _missCount = 0;
+	private long _evictionCount = 0;
+
+	public StatementCache(SQLiteDatabase db)
+	{
+		this(db, DEFAULT_CAPACITY);
+	}
+
+	public StatementCache(SQLiteDatabase db, int capacity)
+	{
+		_db = db;
+		_capacity = capacity;
+		_statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true);
+	}
+
+	/**
+	 * Gets the database whose statements are cached.
+	 *
+	 * @return The SQLiteDatabase.
+	 */
+	public synchronized SQLiteDatabase getDatabase()
+	{
+		return _db;
+	}
+
+	/**
+	 * Switches the cache to another database. Statements compiled for the previous database are closed; the counters
+	 * are kept.
+	 *
+	 * @param db
+	 *        The SQLiteDatabase.
+	 */
+	public synchronized void setDatabase(SQLiteDatabase db)
+	{
+		if (_db != db)
+		{
+			clear();
+			_db = db;
+		}
+	}
+
+	/**
+	 * Checks a compiled statement for the SQL out of the cache, compiling it if there is none. The statement must be
+	 * handed back with release() when done.
+	 *
+	 * @param sql
+	 *        The SQL text of the statement.
+	 * @return The compiled statement, with its bindings cleared.
+	 */
+	public SQLiteStatement acquire(String sql)
+	{
+		String key = normalize(sql);
+		SQLiteDatabase db;
+		long generation;
+		synchronized (this)
+		{
+			SQLiteStatement statement = _statements.remove(key);
+			if (statement != null)
+			{
+				_hitCount++;
+				statement.clearBindings();
+				_checkedOut.put(statement, _generation);
+				return statement;
+			}
+			_missCount++;
+			db = _db;
+			generation = _generation;
+		}
+		SQLiteStatement statement = db.compileStatement(key);
+		synchronized (this)
+		{
+			_checkedOut.put(statement, generation);
+		}
+		return statement;
+	}
+
+	/**
+	 * Hands a statement obtained with acquire() back to the cache, evicting the least recently used statements if the
+	 * cache is full. The statement is closed instead if the cache was cleared or switched to another database while
+	 * it was checked out.
+	 *
+	 * @param sql
+	 *        The SQL text the statement was acquired with.
+	 * @param statement
+	 *        The statement.
+	 */
+	public void release(String sql, SQLiteStatement statement)
+	{
+		String key = normalize(sql);
+		synchronized (this)
+		{
+			Long generation = _checkedOut.remove(statement);
+			if (generation != null && generation == _generation && _capacity > 0 && !_statements.containsKey(key))
+			{
+				_statements.put(key, statement);
+				trimToCapacity();
+				return;
+			}
+		}
+		/*
+		 * Caching is disabled, another copy of the statement is already cached, or the statement was compiled before the
+		 * cache was last cleared.
+		 */
+		statement.close();
+	}
+
+	private void trimToCapacity()
+	{
+		Iterator<Map.Entry<String, SQLiteStatement>> it = _statements.entrySet().iterator();
+		while (_statements.size() > _capacity && it.hasNext())
+		{
+			it.next().getValue().close();
+			it.remove();
+			_evictionCount++;
+		}
+	}
+
+	/**
+	 * Sets the maximum number of statements to keep. A capacity of 0 disables caching.
+	 *
+	 * @param capacity
+	 *        The capacity.
+	 */
+	public synchronized void setCapacity(int capacity)
+	{
+		_capacity = capacity;
+		trimToCapacity();
+	}
+
+	public synchronized int getCapacity()
+	{
+		return _capacity;
+	}
+
+	public synchronized int size()
+	{
+		return _statements.size();
+	}
+
+	public synchronized long getHitCount()
+	{
+		return _hitCount;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return _missCount;
+	}
+
+	public synchronized long getEvictionCount()
+	{
+		return _evictionCount;
+	}
+
+	/**
+	 * Resets the hit, miss and eviction counters.
+	 */
+	public synchronized void resetStats()
+	{
+		_hitCount = 0;
+		_missCount = 0;
+		_evictionCount = 0;
+	}
+
+	/**
+	 * Closes and removes all the cached statements. Those checked out at the time are closed when handed back.
+	 */
+	public synchronized void clear()
+	{
+		_generation++;
+		for (SQLiteStatement statement : _statements.values())
+		{
+			statement.close();
+		}
+		_statements.clear();
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "StatementCache[size=" + _statements.size() + ", capacity=" + _capacity + ", hits=" + _hitCount
+			+ ", misses=" + _missCount + ", evictions=" + _evictionCount + "]";
+	}
+
+	/**
+	 * Normalizes SQL text for use as a cache key: trims it and collapses runs of whitespace outside quoted literals into
+	 * single spaces.
+	 *
+	 * @param sql
+	 *        The SQL text.
+	 * @return The normalized SQL text.
+	 */
+	public static String normalize(String sql)
+	{
+		int length = sql.length();
+		boolean normalized = length == 0
+			|| (!Character.isWhitespace(sql.charAt(0)) && !Character.isWhitespace(sql.charAt(length - 1)));
+		for (int i = 1; normalized && i < length; i++)
+		{
+			char c = sql.charAt(i);
+			if (Character.isWhitespace(c) && (c != ' ' || sql.charAt(i - 1) == ' '))
+			{
+				normalized = false;
+			}
+		}
+		if (normalized)
+		{
+			return sql;
+		}
+
+		StringBuilder sb = new StringBuilder(length);
+		boolean pendingSpace = false;
+		char quote = 0;
+		for (int i = 0; i < length; i++)
+		{
+			char c = sql.charAt(i);
+			if (quote != 0)
+			{
+				// Whitespace within a quoted literal or identifier is significant.
+				sb.append(c);
+				if (c == quote)
+				{
+					quote = 0;
+				}
+			}
+			else if (Character.isWhitespace(c))
+			{
+				pendingSpace = sb.length() > 0;
+			}
+			else
+			{
+				if (pendingSpace)
+				{
+					sb.append(' ');
+					pendingSpace = false;
+				}
+				if (c == '\'' || c == '"' || c == '`')
+				{
+					quote = c;
+				}
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
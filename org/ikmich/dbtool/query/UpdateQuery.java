@@ -1,6 +1,11 @@
 package org.ikmich.dbtool.query;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.content.ContentValues;
 import android.content.Context;
 
@@ -27,17 +32,57 @@ public class UpdateQuery extends AbsQuery
 	void resetState()
 	{
 		_table = "";
-		_whereClauses.clear();
-		_whereConditions.clear();
+		_where.clear();
 		_whereClause = "";
 	}
 
-	public Integer run()
+	/**
+	 * Compiles the query into an 'UPDATE' statement. The column values are bound first, followed by the where args.
+	 */
+	public String compile(List<Object> bindArgs)
 	{
+		if (_values == null || _values.size() == 0)
+		{
+			throw new IllegalArgumentException("Empty values");
+		}
+
 		buildWhereClause();
-		int numRows = _sqliteDb.update(_table, _values, _whereClause, _whereArgs);
+
+		StringBuilder sql = new StringBuilder(32 + _table.length() + _values.size() * 16 + _whereClause.length());
+		sql.append("UPDATE ").append(_table).append(" SET ");
+		int i = 0;
+		for (Map.Entry<String, Object> entry : _values.valueSet())
+		{
+			sql.append(i++ > 0 ? "," : "").append(entry.getKey()).append("=?");
+			bindArgs.add(toColumnValue(entry.getKey(), entry.getValue()));
+		}
+		if (_whereClause.length() > 0)
+		{
+			sql.append(" WHERE ").append(_whereClause);
+		}
+		addWhereArgs(bindArgs);
+
+		return sql.toString();
+	}
+
+	public Integer run()
+	{
+		ArrayList<Object> bindArgs = new ArrayList<Object>();
+		String sql = compile(bindArgs);
+
+		SQLiteStatement statement = acquireStatement(sql);
+		int numRows;
+		try
+		{
+			BindArgs.bindAll(statement, bindArgs);
+			numRows = statement.executeUpdateDelete();
+		}
+		finally
+		{
+			releaseStatement(sql, statement);
+		}
 		resetState();
-		
+
 		return numRows;
 	}
 
@@ -0,0 +1,146 @@
+package org.ikmich.dbtool.query;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * An insert that updates the existing row instead when it conflicts with a unique constraint, in one statement:
+ * <p>
+ * <b>INSERT INTO t (id,name) VALUES (?,?) ON CONFLICT(id) DO UPDATE SET name=excluded.name</b>
+ * <p>
+ * The conflict target is set with onConflict(...), and the action with doUpdate(...) or doNothing(). With a conflict
+ * target and no action, every inserted column outside the target is updated; without a conflict target, conflicting
+ * rows are skipped. Record sets are inserted as by InsertQuery, through one compiled statement.
+ * <p>
+ * The ON CONFLICT clause needs SQLite 3.24 or later (Android 11 / API 30). On older versions, use
+ * conflictAlgorithm(SQLiteDatabase.CONFLICT_REPLACE) on a plain insert, which deletes the conflicting row instead of
+ * updating it.
+ * <p>
+ * The row id returned when a row is updated rather than inserted is not that of the updated row, as SQLite only
+ * reports the id of the last inserted row. It is -1 when the conflict is ignored.
+ *
+ * @author Ikmich
+ */
+public class UpsertQuery extends InsertQuery
+{
+	private String[] _conflictColumns;
+	private String[] _updateColumns;
+	private boolean _doNothing = false;
+
+	public UpsertQuery(SQLiteDatabase db)
+	{
+		this(null, db);
+	}
+
+	public UpsertQuery(Context c, SQLiteDatabase db)
+	{
+		super(c, db);
+	}
+
+	/**
+	 * Sets the conflict target: the columns of the unique constraint or primary key whose violation turns the insert
+	 * into an update.
+	 *
+	 * @param columns
+	 *        The column names.
+	 */
+	public UpsertQuery onConflict(String... columns)
+	{
+		_conflictColumns = columns;
+		return this;
+	}
+
+	/**
+	 * Updates the given columns of the conflicting row with the values that were to be inserted. Without columns,
+	 * every inserted column outside the conflict target is updated.
+	 *
+	 * @param columns
+	 *        The column names.
+	 */
+	public UpsertQuery doUpdate(String... columns)
+	{
+		_updateColumns = columns;
+		_doNothing = false;
+		return this;
+	}
+
+	/**
+	 * Leaves the conflicting row as it is, and skips the insert.
+	 */
+	public UpsertQuery doNothing()
+	{
+		_doNothing = true;
+		_updateColumns = null;
+		return this;
+	}
+
+	@Override
+	protected void appendConflictClause(StringBuilder sql, String[] columns)
+	{
+		boolean hasTarget = _conflictColumns != null && _conflictColumns.length > 0;
+		sql.append(" ON CONFLICT");
+		if (hasTarget)
+		{
+			sql.append('(');
+			for (int i = 0; i < _conflictColumns.length; i++)
+			{
+				sql.append(i > 0 ? "," : "").append(_conflictColumns[i]);
+			}
+			sql.append(')');
+		}
+
+		if (_doNothing || !hasTarget)
+		{
+			if (!_doNothing && _updateColumns != null)
+			{
+				throw new IllegalStateException("doUpdate() needs a conflict target set with onConflict().");
+			}
+			sql.append(" DO NOTHING");
+			return;
+		}
+
+		String[] updateColumns = (_updateColumns != null && _updateColumns.length > 0) ? _updateColumns : columns;
+		int mark = sql.length();
+		sql.append(" DO UPDATE SET ");
+		int count = 0;
+		for (String column : updateColumns)
+		{
+			if (_updateColumns == null || _updateColumns.length == 0)
+			{
+				if (isConflictColumn(column))
+				{
+					continue;
+				}
+			}
+			sql.append(count++ > 0 ? "," : "").append(column).append("=excluded.").append(column);
+		}
+
+		if (count == 0)
+		{
+			// Only the conflict target was inserted: there is nothing to update.
+			sql.setLength(mark);
+			sql.append(" DO NOTHING");
+		}
+	}
+
+	private boolean isConflictColumn(String column)
+	{
+		for (String conflictColumn : _conflictColumns)
+		{
+			if (conflictColumn.equalsIgnoreCase(column))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	void resetState()
+	{
+		super.resetState();
+		_conflictColumns = null;
+		_updateColumns = null;
+		_doNothing = false;
+	}
+}
@@ -0,0 +1,387 @@
+package org.ikmich.dbtool.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The where clause of a query, held as a small predicate tree. Predicates are appended in order, joined by AND (the
+ * default) or OR, and can be negated with NOT or nested in parenthesized groups to set precedence explicitly:
+ * <p>
+ * <b>a = ? AND NOT (b = ? OR c = ?)</b> is built with
+ * <b>add("a = ?", x).and().not().beginGroup().add("b = ?", y).or().add("c = ?", z).endGroup()</b>.
+ * <p>
+ * The values bound to the '?' placeholders are kept with their predicates, so collectBindArgs() returns them in the
+ * same order render() emits the placeholders. Raw predicates, added with addRaw(), take their values from the list
+ * given to rawArgs(), in turn, each as many as it has placeholders.
+ *
+ * @author Ikmich
+ */
+public class WhereClause
+{
+	public static final String AND = "AND";
+	public static final String OR = "OR";
+
+	private static final Object[] NO_ARGS = new Object[0];
+
+	/**
+	 * A predicate or a group of predicates, with the connector joining it to the previous term of its group.
+	 */
+	private static class Node
+	{
+		String connector;
+		boolean negated;
+
+		// Set for a predicate.
+		String expression;
+		Object[] args;
+		// Set for a raw predicate, whose values come from the raw args.
+		int rawArgCount = -1;
+
+		// Set for a group.
+		ArrayList<Node> children;
+	}
+
+	private final Node _root;
+	private final ArrayList<Node> _openGroups;
+	private String _pendingConnector;
+	private boolean _pendingNot;
+	private int _estimatedLength;
+	private int _bindArgCount;
+	private Object[] _rawArgs;
+
+	public WhereClause()
+	{
+		_root = newGroup();
+		_openGroups = new ArrayList<Node>(4);
+		clear();
+	}
+
+	private static Node newGroup()
+	{
+		Node group = new Node();
+		group.children = new ArrayList<Node>();
+		return group;
+	}
+
+	private WhereClause append(Node node)
+	{
+		node.connector = _pendingConnector == null ? AND : _pendingConnector;
+		node.negated = _pendingNot;
+		_pendingConnector = null;
+		_pendingNot = false;
+
+		_openGroups.get(_openGroups.size() - 1).children.add(node);
+		_estimatedLength += node.connector.length() + (node.negated ? 8 : 2);
+		return this;
+	}
+
+	/**
+	 * Appends a predicate without bind values.
+	 *
+	 * @param expression
+	 *        The predicate, e.g. "name is null".
+	 * @return The WhereClause, for chaining.
+	 */
+	public WhereClause add(String expression)
+	{
+		return add(expression, NO_ARGS);
+	}
+
+	/**
+	 * Appends a predicate with one '?' placeholder.
+	 *
+	 * @param expression
+	 *        The predicate, e.g. "id = ?".
+	 * @param bindArg
+	 *        The value to bind to the placeholder.
+	 * @return The WhereClause, for chaining.
+	 */
+	public WhereClause add(String expression, Object bindArg)
+	{
+		return add(expression, new Object[] {
+			bindArg
+		});
+	}
+
+	/**
+	 * Appends a predicate with any number of '?' placeholders.
+	 *
+	 * @param expression
+	 *        The predicate, e.g. "id IN (?,?,?)".
+	 * @param bindArgs
+	 *        The values to bind to the placeholders, in order.
+	 * @return The WhereClause, for chaining.
+	 */
+	public WhereClause add(String expression, Object[] bindArgs)
+	{
+		Node node = new Node();
+		node.expression = expression;
+		node.args = bindArgs;
+		_estimatedLength += expression.length();
+		_bindArgCount += bindArgs.length;
+		return append(node);
+	}
+
+	/**
+	 * Appends a raw predicate, whose '?' placeholders are bound to the values given to rawArgs(), in the order the
+	 * raw predicates were added.
+	 *
+	 * @param expression
+	 *        The predicate, e.g. "age > ? AND age < ?".
+	 * @return The WhereClause, for chaining.
+	 */
+	public WhereClause addRaw(String expression)
+	{
+		Node node = new Node();
+		node.expression = expression;
+		node.args = NO_ARGS;
+		node.rawArgCount = countPlaceholders(expression);
+		_estimatedLength += expression.length();
+		return append(node);
+	}
+
+	/**
+	 * Sets the values bound to the placeholders of the raw predicates. Values left over once every raw predicate has
+	 * taken its share are bound after all the others.
+	 *
+	 * @param rawArgs
+	 *        The values, in placeholder order across the raw predicates.
+	 * @return The WhereClause, for chaining.
+	 */
+	public WhereClause rawArgs(Object[] rawArgs)
+	{
+		_rawArgs = rawArgs;
+		return this;
+	}
+
+	/**
+	 * Counts the '?' placeholders of an expression, outside quoted strings and names.
+	 */
+	static int countPlaceholders(String expression)
+	{
+		int count = 0;
+		char quote = 0;
+		for (int i = 0, n = expression.length(); i < n; i++)
+		{
+			char ch = expression.charAt(i);
+			if (quote != 0)
+			{
+				if (ch == quote)
+				{
+					quote = 0;
+				}
+			}
+			else if (ch == '\'' || ch == '"' || ch == '`')
+			{
+				quote = ch;
+			}
+			else if (ch == '[')
+			{
+				quote = ']';
+			}
+			else if (ch == '?')
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Joins the next term to the previous one with AND.
+	 */
+	public WhereClause and()
+	{
+		_pendingConnector = AND;
+		return this;
+	}
+
+	/**
+	 * Joins the next term to the previous one with OR.
+	 */
+	public WhereClause or()
+	{
+		_pendingConnector = OR;
+		return this;
+	}
+
+	/**
+	 * Negates the next term: a predicate or a group.
+	 */
+	public WhereClause not()
+	{
+		_pendingNot = !_pendingNot;
+		return this;
+	}
+
+	/**
+	 * Opens a parenthesized group. The terms appended until endGroup() is called are nested within it.
+	 */
+	public WhereClause beginGroup()
+	{
+		Node group = newGroup();
+		append(group);
+		_openGroups.add(group);
+		return this;
+	}
+
+	/**
+	 * Closes the group opened by the last beginGroup() call. Groups left open are closed when the clause is rendered.
+	 */
+	public WhereClause endGroup()
+	{
+		if (_openGroups.size() > 1)
+		{
+			_openGroups.remove(_openGroups.size() - 1);
+		}
+		_pendingConnector = null;
+		_pendingNot = false;
+		return this;
+	}
+
+	/**
+	 * Checks whether any predicate has been added.
+	 */
+	public boolean isEmpty()
+	{
+		return _root.children.isEmpty();
+	}
+
+	/**
+	 * Removes all the predicates.
+	 */
+	public void clear()
+	{
+		_root.children.clear();
+		_openGroups.clear();
+		_openGroups.add(_root);
+		_pendingConnector = null;
+		_pendingNot = false;
+		_estimatedLength = 0;
+		_bindArgCount = 0;
+		_rawArgs = null;
+	}
+
+	/**
+	 * Gets the number of values bound by the predicates.
+	 */
+	public int getBindArgCount()
+	{
+		return _bindArgCount + (_rawArgs == null ? 0 : _rawArgs.length);
+	}
+
+	/**
+	 * Renders the clause into SQL text, without the WHERE keyword.
+	 *
+	 * @return The SQL text, or an empty string if there are no predicates.
+	 */
+	public String render()
+	{
+		if (isEmpty())
+		{
+			return "";
+		}
+		StringBuilder sb = new StringBuilder(_estimatedLength);
+		renderGroup(_root, sb);
+		return sb.toString();
+	}
+
+	private static void renderGroup(Node group, StringBuilder sb)
+	{
+		int start = sb.length();
+		for (int i = 0, n = group.children.size(); i < n; i++)
+		{
+			Node node = group.children.get(i);
+			int mark = sb.length();
+			if (mark > start)
+			{
+				sb.append(' ').append(node.connector).append(' ');
+			}
+			int termStart = sb.length();
+
+			if (node.children != null)
+			{
+				sb.append(node.negated ? "NOT (" : "(");
+				int innerStart = sb.length();
+				renderGroup(node, sb);
+				if (sb.length() == innerStart)
+				{
+					// Skip empty groups.
+					sb.setLength(mark);
+					continue;
+				}
+				sb.append(')');
+			}
+			else if (node.negated)
+			{
+				sb.append("NOT (").append(node.expression).append(')');
+			}
+			else
+			{
+				sb.append(node.expression);
+			}
+
+			if (sb.length() == termStart)
+			{
+				sb.setLength(mark);
+			}
+		}
+	}
+
+	/**
+	 * Adds the values bound by the predicates to a list, in the order their placeholders are rendered.
+	 *
+	 * @param bindArgs
+	 *        The list to add the values to.
+	 */
+	public void collectBindArgs(List<Object> bindArgs)
+	{
+		if (getBindArgCount() == 0)
+		{
+			return;
+		}
+		Object[] rawArgs = _rawArgs == null ? NO_ARGS : _rawArgs;
+		int next = collectBindArgs(_root, bindArgs, rawArgs, 0);
+		for (int i = next; i < rawArgs.length; i++)
+		{
+			bindArgs.add(rawArgs[i]);
+		}
+	}
+
+	/**
+	 * @return The index of the next raw arg to bind.
+	 */
+	private static int collectBindArgs(Node group, List<Object> bindArgs, Object[] rawArgs, int nextRawArg)
+	{
+		for (int i = 0, n = group.children.size(); i < n; i++)
+		{
+			Node node = group.children.get(i);
+			if (node.children != null)
+			{
+				nextRawArg = collectBindArgs(node, bindArgs, rawArgs, nextRawArg);
+			}
+			else if (node.rawArgCount >= 0)
+			{
+				int end = Math.min(nextRawArg + node.rawArgCount, rawArgs.length);
+				for (; nextRawArg < end; nextRawArg++)
+				{
+					bindArgs.add(rawArgs[nextRawArg]);
+				}
+			}
+			else
+			{
+				for (Object arg : node.args)
+				{
+					bindArgs.add(arg);
+				}
+			}
+		}
+		return nextRawArg;
+	}
+
+	@Override
+	public String toString()
+	{
+		return render();
+	}
+}
@@ -0,0 +1,118 @@
+package org.ikmich.dbtool.sample;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ikmich.dbtool.DbRecord;
+import org.ikmich.dbtool.DbRecordSet;
+import org.ikmich.dbtool.Dbtool;
+import org.ikmich.dbtool.table.TableProfile;
+
+import android.content.Context;
+
+/**
+ * Checks that threads sharing the Dbtool instance can build and run query chains at the same time. Each thread inserts
+ * rows with its own name into the sample 'stuffNames' table and reads them back, with the fluent calls of all the
+ * threads interleaving; a thread that gets a row of another thread, or the wrong number of rows, counts a failure.
+ * 
+ * @author Ikenna Agbasimalo
+ * 
+ */
+public class ConcurrentQueriesCheck
+{
+	public static final String DB_NAME = "dbtool_concurrency";
+
+	/**
+	 * Runs the check.
+	 * 
+	 * @param c
+	 *        The Context.
+	 * @param threadCount
+	 *        The number of threads.
+	 * @param iterations
+	 *        The number of insert and read rounds of each thread.
+	 * @return A report of the number of failures.
+	 */
+	public static String run(Context c, int threadCount, final int iterations)
+	{
+		final Dbtool dbtool = Dbtool.getInstance(c);
+		dbtool.createDb(DB_NAME);
+		dbtool.setDb(DB_NAME);
+
+		final TableProfile table = SampleTableProfileFactory.getStuffNames();
+		final AtomicInteger failures = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threadCount);
+
+		dbtool.acquireDb();
+		try
+		{
+			dbtool.createNewTable(table);
+
+			for (int t = 0; t < threadCount; t++)
+			{
+				final String name = "thread-" + t;
+				new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							start.await();
+							for (int i = 0; i < iterations; i++)
+							{
+								dbtool.insertInto(table.getTableName()).record(
+									new DbRecord().set("stuffName", name)).run();
+
+								DbRecordSet rows = (DbRecordSet) dbtool.getAll().from(table.getTableName())
+									.whereEquals("stuffName", name).run();
+								if (rows == null || rows.size() != i + 1)
+								{
+									failures.incrementAndGet();
+									continue;
+								}
+								for (DbRecord row : rows)
+								{
+									if (!name.equals(row.getString("stuffName")))
+									{
+										failures.incrementAndGet();
+									}
+								}
+							}
+						}
+						catch (Exception ex)
+						{
+							errors.incrementAndGet();
+						}
+						finally
+						{
+							done.countDown();
+						}
+					}
+				}, name).start();
+			}
+
+			start.countDown();
+			done.await();
+
+			long expected = (long) threadCount * iterations;
+			long count = dbtool.getAll().from(table.getTableName()).count();
+			return new StringBuilder().append(threadCount).append(" threads, ").append(iterations)
+				.append(" iterations\n").append("Rows: ").append(count).append(" of ").append(expected)
+				.append("\nWrong results: ").append(failures.get()).append("\nErrors: ").append(errors.get())
+				.toString();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			return "Interrupted";
+		}
+		finally
+		{
+			dbtool.dropTable(table.getTableName());
+			dbtool.releaseDb();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package org.ikmich.dbtool.sample;
+
+import org.ikmich.dbtool.DbRecord;
+import org.ikmich.dbtool.DbRecordSet;
+import org.ikmich.dbtool.Dbtool;
+import org.ikmich.dbtool.query.InsertQuery;
+import org.ikmich.dbtool.table.TableProfile;
+
+import android.content.Context;
+
+/**
+ * Compares the two bulk insert modes of a RecordSet insert: one statement rebound per row, and multi-VALUES
+ * statements. Each mode inserts the same rows into a fresh copy of the sample 'stuffNames' table, a narrow table where
+ * per-statement overhead dominates.
+ * 
+ * @author Ikenna Agbasimalo
+ * 
+ */
+public class InsertBenchmark
+{
+	public static final String DB_NAME = "dbtool_benchmark";
+
+	private static final int WARMUP_ROUNDS = 1;
+
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param c
+	 *        The Context.
+	 * @param rowCount
+	 *        The number of rows to insert in each round.
+	 * @param rounds
+	 *        The number of measured rounds for each mode.
+	 * @return A report of the average time taken by each mode.
+	 */
+	public static String run(Context c, int rowCount, int rounds)
+	{
+		Dbtool dbtool = Dbtool.getInstance(c);
+		dbtool.createDb(DB_NAME);
+		dbtool.setDb(DB_NAME);
+
+		DbRecordSet rows = new DbRecordSet();
+		for (int i = 0; i < rowCount; i++)
+		{
+			rows.add(new DbRecord().set("stuffName", "stuff " + i));
+		}
+
+		try
+		{
+			dbtool.openDb();
+
+			for (int i = 0; i < WARMUP_ROUNDS; i++)
+			{
+				insert(dbtool, rows, false);
+				insert(dbtool, rows, true);
+			}
+
+			long perRowNanos = 0;
+			long multiRowNanos = 0;
+			for (int i = 0; i < rounds; i++)
+			{
+				perRowNanos += insert(dbtool, rows, false);
+				multiRowNanos += insert(dbtool, rows, true);
+			}
+
+			return new StringBuilder().append(rowCount).append(" rows, ").append(rounds).append(" rounds\n")
+				.append("Per-row statement: ").append(perRowNanos / rounds / 1000000).append(" ms\n")
+				.append("Multi-VALUES (").append(InsertQuery.rowsPerStatement(1))
+				.append(" rows/statement): ").append(multiRowNanos / rounds / 1000000).append(" ms").toString();
+		}
+		finally
+		{
+			dbtool.dropTable(SampleTableProfileFactory.getStuffNames().getTableName());
+			dbtool.closeDb();
+		}
+	}
+
+	/**
+	 * Inserts the rows into a freshly created table.
+	 * 
+	 * @return The time taken, in nanoseconds.
+	 */
+	private static long insert(Dbtool dbtool, DbRecordSet rows, boolean multiRowValues)
+	{
+		TableProfile table = SampleTableProfileFactory.getStuffNames();
+		dbtool.createNewTable(table);
+
+		long start = System.nanoTime();
+		dbtool.insertInto(table.getTableName()).recordSet(rows).multiRowValues(multiRowValues).run();
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,419 @@
+package org.ikmich.dbtool.table;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * A snapshot of the schema of a database: its tables and views, read from sqlite_master (and sqlite_temp_master), and
+ * the columns of each, read with PRAGMA table_info. It is read once, when loaded, and never changes; Dbtool keeps one
+ * per database and loads a new one after DDL run through it.
+ * <p>
+ * Names are looked up case-insensitively, as in SQLite, and may be quoted or prefixed with the schema name.
+ *
+ * @author Ikenna Agbasimalo
+ */
+public final class SchemaCatalog
+{
+	/**
+	 * The type affinity of a column, which decides how SQLite stores the values written to it. See
+	 * https://www.sqlite.org/datatype3.html.
+	 */
+	public static enum Affinity
+	{
+		INTEGER, TEXT, BLOB, REAL, NUMERIC;
+
+		/**
+		 * Gets the affinity of a declared column type, by the rules of SQLite.
+		 */
+		public static Affinity of(String declaredType)
+		{
+			String type = declaredType == null ? "" : declaredType.toUpperCase(Locale.US);
+			if (type.contains("INT"))
+			{
+				return INTEGER;
+			}
+			if (type.contains("CHAR") || type.contains("CLOB") || type.contains("TEXT"))
+			{
+				return TEXT;
+			}
+			if (type.length() == 0 || type.contains("BLOB"))
+			{
+				return BLOB;
+			}
+			if (type.contains("REAL") || type.contains("FLOA") || type.contains("DOUB"))
+			{
+				return REAL;
+			}
+			return NUMERIC;
+		}
+	}
+
+	/**
+	 * A column of a table.
+	 */
+	public static final class Column
+	{
+		private final String _name;
+		private final String _declaredType;
+		private final Affinity _affinity;
+		private final boolean _notNull;
+		private final String _defaultValue;
+		private final boolean _primaryKey;
+
+		Column(String name, String declaredType, boolean notNull, String defaultValue, boolean primaryKey)
+		{
+			_name = name;
+			_declaredType = declaredType;
+			_affinity = Affinity.of(declaredType);
+			_notNull = notNull;
+			_defaultValue = defaultValue;
+			_primaryKey = primaryKey;
+		}
+
+		public String getName()
+		{
+			return _name;
+		}
+
+		public String getDeclaredType()
+		{
+			return _declaredType;
+		}
+
+		public Affinity getAffinity()
+		{
+			return _affinity;
+		}
+
+		public boolean isNotNull()
+		{
+			return _notNull;
+		}
+
+		/**
+		 * Gets the SQL text of the column's DEFAULT value, or null if it has none.
+		 */
+		public String getDefaultValue()
+		{
+			return _defaultValue;
+		}
+
+		public boolean isPrimaryKey()
+		{
+			return _primaryKey;
+		}
+
+		/**
+		 * Converts a value to the type the column stores it as, so it is bound with the matching bind method: e.g. the
+		 * String "42" is bound as the integer 42 to an INTEGER column, and a Boolean as 0 or 1. Values that would not
+		 * convert losslessly are returned as they are, for SQLite to store as given.
+		 *
+		 * @param value
+		 *        The value to write to the column.
+		 * @return The converted value.
+		 */
+		public Object toColumnValue(Object value)
+		{
+			if (value == null || value instanceof byte[])
+			{
+				return value;
+			}
+
+			switch (_affinity)
+			{
+				case INTEGER:
+					if (value instanceof Boolean)
+					{
+						return ((Boolean) value).booleanValue() ? 1L : 0L;
+					}
+					if (value instanceof String)
+					{
+						Long l = parseLong((String) value);
+						return l != null ? l : value;
+					}
+					return value;
+				case REAL:
+					if (value instanceof Boolean)
+					{
+						return ((Boolean) value).booleanValue() ? 1.0 : 0.0;
+					}
+					if (value instanceof String)
+					{
+						Double d = parseDouble((String) value);
+						return d != null ? d : value;
+					}
+					if (value instanceof Number)
+					{
+						return ((Number) value).doubleValue();
+					}
+					return value;
+				case NUMERIC:
+					if (value instanceof Boolean)
+					{
+						return ((Boolean) value).booleanValue() ? 1L : 0L;
+					}
+					if (value instanceof String)
+					{
+						Long l = parseLong((String) value);
+						if (l != null)
+						{
+							return l;
+						}
+						Double d = parseDouble((String) value);
+						return d != null ? d : value;
+					}
+					return value;
+				case TEXT:
+					if (value instanceof Boolean)
+					{
+						return ((Boolean) value).booleanValue() ? "1" : "0";
+					}
+					if (value instanceof Number)
+					{
+						return value.toString();
+					}
+					return value;
+				default:
+					return value;
+			}
+		}
+
+		private static Long parseLong(String s)
+		{
+			// Only the canonical form, so that e.g. "007" or " 7" keep their text.
+			try
+			{
+				long l = Long.parseLong(s);
+				return Long.toString(l).equals(s) ? l : null;
+			}
+			catch (NumberFormatException ex)
+			{
+				return null;
+			}
+		}
+
+		private static Double parseDouble(String s)
+		{
+			if (s.length() == 0 || Character.isWhitespace(s.charAt(0))
+				|| Character.isWhitespace(s.charAt(s.length() - 1)))
+			{
+				return null;
+			}
+			try
+			{
+				double d = Double.parseDouble(s);
+				return Double.isInfinite(d) || Double.isNaN(d) ? null : d;
+			}
+			catch (NumberFormatException ex)
+			{
+				return null;
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return _name + " " + _declaredType;
+		}
+	}
+
+	/**
+	 * A table or view.
+	 */
+	public static final class Table
+	{
+		private final String _name;
+		private final boolean _view;
+		private final LinkedHashMap<String, Column> _columns;
+
+		Table(String name, boolean view, LinkedHashMap<String, Column> columns)
+		{
+			_name = name;
+			_view = view;
+			_columns = columns;
+		}
+
+		public String getName()
+		{
+			return _name;
+		}
+
+		public boolean isView()
+		{
+			return _view;
+		}
+
+		/**
+		 * Gets a column by name.
+		 *
+		 * @return The Column, or null if the table has no such column.
+		 */
+		public Column getColumn(String column)
+		{
+			return _columns.get(normalize(column));
+		}
+
+		/**
+		 * Gets the columns, in table order.
+		 */
+		public List<Column> getColumns()
+		{
+			return Collections.unmodifiableList(new ArrayList<Column>(_columns.values()));
+		}
+
+		@Override
+		public String toString()
+		{
+			return _name + _columns.values();
+		}
+	}
+
+	private final HashMap<String, Table> _tables;
+
+	private SchemaCatalog(HashMap<String, Table> tables)
+	{
+		_tables = tables;
+	}
+
+	/**
+	 * Reads the schema of a database.
+	 *
+	 * @param db
+	 *        The open database.
+	 * @return The SchemaCatalog.
+	 */
+	public static SchemaCatalog load(SQLiteDatabase db)
+	{
+		HashMap<String, Boolean> names = new HashMap<String, Boolean>();
+		Cursor c = db.rawQuery("SELECT name, type FROM sqlite_master WHERE type IN ('table','view') "
+			+ "UNION ALL SELECT name, type FROM sqlite_temp_master WHERE type IN ('table','view')", null);
+		try
+		{
+			while (c.moveToNext())
+			{
+				names.put(c.getString(0), "view".equals(c.getString(1)));
+			}
+		}
+		finally
+		{
+			c.close();
+		}
+
+		HashMap<String, Table> tables = new HashMap<String, Table>();
+		for (Map.Entry<String, Boolean> entry : names.entrySet())
+		{
+			String name = entry.getKey();
+			LinkedHashMap<String, Column> columns = new LinkedHashMap<String, Column>();
+			c = db.rawQuery("PRAGMA table_info(" + quote(name) + ")", null);
+			try
+			{
+				int nameIndex = c.getColumnIndex("name");
+				int typeIndex = c.getColumnIndex("type");
+				int notNullIndex = c.getColumnIndex("notnull");
+				int defaultIndex = c.getColumnIndex("dflt_value");
+				int pkIndex = c.getColumnIndex("pk");
+				while (c.moveToNext())
+				{
+					Column column = new Column(c.getString(nameIndex), c.getString(typeIndex),
+						c.getInt(notNullIndex) != 0, c.isNull(defaultIndex) ? null : c.getString(defaultIndex),
+						c.getInt(pkIndex) != 0);
+					columns.put(normalize(column.getName()), column);
+				}
+			}
+			finally
+			{
+				c.close();
+			}
+			tables.put(normalize(name), new Table(name, entry.getValue(), columns));
+		}
+		return new SchemaCatalog(tables);
+	}
+
+	/**
+	 * Checks whether the database has a table (or view) of the name.
+	 */
+	public boolean hasTable(String table)
+	{
+		return getTable(table) != null;
+	}
+
+	/**
+	 * Gets a table (or view) by name.
+	 *
+	 * @return The Table, or null if there is none.
+	 */
+	public Table getTable(String table)
+	{
+		if (table == null)
+		{
+			return null;
+		}
+		return _tables.get(normalize(table));
+	}
+
+	/**
+	 * Gets a column of a table.
+	 *
+	 * @return The Column, or null if there is no such table or column.
+	 */
+	public Column getColumn(String table, String column)
+	{
+		Table t = getTable(table);
+		return t != null ? t.getColumn(column) : null;
+	}
+
+	/**
+	 * Gets the names of the tables and views, as declared.
+	 */
+	public List<String> getTableNames()
+	{
+		ArrayList<String> names = new ArrayList<String>(_tables.size());
+		for (Table table : _tables.values())
+		{
+			names.add(table.getName());
+		}
+		return names;
+	}
+
+	/**
+	 * Normalizes a table or column name for lookup: strips a schema prefix and quotes, and lower-cases it.
+	 */
+	static String normalize(String name)
+	{
+		String n = name.trim();
+		int dot = n.lastIndexOf('.');
+		if (dot >= 0 && n.indexOf('"') < 0 && n.indexOf('`') < 0 && n.indexOf('[') < 0)
+		{
+			n = n.substring(dot + 1);
+		}
+		if (n.length() >= 2)
+		{
+			char first = n.charAt(0);
+			char last = n.charAt(n.length() - 1);
+			if ((first == '"' && last == '"') || (first == '`' && last == '`') || (first == '[' && last == ']'))
+			{
+				n = n.substring(1, n.length() - 1);
+			}
+		}
+		return n.toLowerCase(Locale.US);
+	}
+
+	private static String quote(String name)
+	{
+		return "\"" + name.replace("\"", "\"\"") + "\"";
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SchemaCatalog" + _tables.values();
+	}
+}